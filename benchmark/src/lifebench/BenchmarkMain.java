@@ -0,0 +1,36 @@
+package lifebench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark with the GC profiler attached, which adds the
+ * allocation rate (gc.alloc.rate.norm, bytes per step) to the results. The
+ * arguments are JMH's own, so a regular expression narrows the run and -p,
+ * -wi, -i and the like override the annotations, e.g.
+ * "SoupBenchmark -p engine=bit -p size=512x512".
+ *
+ * Build and run it with the Maven module in benchmark/, from the project
+ * root:
+ *
+ * <pre>
+ * mvn -f benchmark/pom.xml package
+ * java -jar benchmark/target/benchmarks.jar [JMH options]
+ * </pre>
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		if (commandLine.getIncludes().isEmpty())
+			builder.include("lifebench\\..*");
+		Options options = builder.parent(commandLine).addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,22 @@
+package lifebench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts cell updates next to the step count, so a throughput run also
+ * reports cell-updates per second and ns/cell-update is simply its inverse.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class CellUpdates {
+	public long cellUpdates;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		cellUpdates = 0;
+	}
+}
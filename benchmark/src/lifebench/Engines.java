@@ -0,0 +1,81 @@
+package lifebench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Access to the game classes, which live in the unnamed package. JMH will not
+ * generate benchmarks outside a named package and Java cannot import from the
+ * unnamed one, so engines are reached through method handles held in static
+ * finals, which the JIT inlines like ordinary calls.
+ */
+final class Engines {
+	private static final MethodHandle CREATE;
+	private static final MethodHandle STEP;
+	private static final MethodHandle CLOSE;
+	private static final MethodHandle LOAD;
+	private static final Class<?> ENGINE_TYPE;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			ENGINE_TYPE = Class.forName("EngineType");
+			Class<?> engine = Class.forName("GenerationEngine");
+			CREATE = lookup.findVirtual(ENGINE_TYPE, "create",
+					MethodType.methodType(engine, boolean[][].class, ForkJoinPool.class))
+					.asType(MethodType.methodType(Object.class, Object.class, boolean[][].class, ForkJoinPool.class));
+			STEP = lookup.findVirtual(engine, "step", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+			CLOSE = lookup.findVirtual(engine, "close", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+			LOAD = lookup.findStatic(Class.forName("PatternLoader"), "load",
+					MethodType.methodType(Class.forName("PatternInfo"), File.class, boolean[][].class, int.class, int.class))
+					.asType(MethodType.methodType(void.class, File.class, boolean[][].class, int.class, int.class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Engines() {
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object create(String engineType, boolean[][] cells, ForkJoinPool pool) throws Throwable {
+		Object type = Enum.valueOf((Class) ENGINE_TYPE, engineType.toUpperCase());
+		return (Object) CREATE.invokeExact(type, cells, pool);
+	}
+
+	static void step(Object engine) throws Throwable {
+		STEP.invokeExact(engine);
+	}
+
+	/**
+	 * Frees what the engine holds outside the heap, the boards of offheap.
+	 */
+	static void close(Object engine) throws Throwable {
+		CLOSE.invokeExact(engine);
+	}
+
+	static void load(File file, boolean[][] cells, int originRow, int originColumn) throws Throwable {
+		LOAD.invokeExact(file, cells, originRow, originColumn);
+	}
+
+	/**
+	 * Random soup with the given percentage of live cells, the same for every
+	 * engine so that they step identical boards.
+	 */
+	static boolean[][] soup(int rows, int columns, int density) {
+		Random random = new Random(42);
+		boolean[][] cells = new boolean[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				cells[row][column] = random.nextInt(100) < density;
+			}
+		}
+		return cells;
+	}
+}
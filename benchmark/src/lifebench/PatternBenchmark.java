@@ -0,0 +1,67 @@
+package lifebench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One step of every engine over patterns of the bundled library, loaded the
+ * way the Open File button loads them onto the ROWS x COLUMNS board. The
+ * library folder is taken from -Dlife.patterns, by default "Life Patterns" in
+ * the working directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+	private static final int ROWS = 60;// Simulation.ROWS
+	private static final int COLUMNS = 180;// Simulation.COLUMNS
+	private static final int ORIGIN_ROW = 20;// Simulation.ORIGIN_ROW
+	private static final int ORIGIN_COLUMN = 40;// Simulation.ORIGIN_COLUMN
+
+	@Param({ "classic", "bit", "frontier", "sparse", "block", "vector", "offheap" })
+	public String engine;
+
+	@Param({ "Oscillators/pulsar.life", "Oscillators/super fountain.life", "Puffers/puffer train.life",
+			"Puffers/backrake.life", "Gliders/slide gun.life", "Gliders/turtle.life", "Spaceships/queen bee shuttle.life",
+			"Still/spiral.life" })
+	public String pattern;
+
+	private Object generation;
+	private long cellsPerStep = (long) ROWS * COLUMNS;
+
+	@Setup
+	public void setUp() throws Throwable {
+		boolean[][] cells = new boolean[ROWS][COLUMNS];
+		Engines.load(new File(System.getProperty("life.patterns", "Life Patterns"), pattern), cells, ORIGIN_ROW,
+				ORIGIN_COLUMN);
+		generation = Engines.create(engine, cells, null);
+	}
+
+	@TearDown
+	public void tearDown() throws Throwable {
+		Engines.close(generation);
+	}
+
+	@Benchmark
+	public long step(CellUpdates counter) throws Throwable {
+		Engines.step(generation);
+		counter.cellUpdates += cellsPerStep;
+		return cellsPerStep;
+	}
+}
@@ -0,0 +1,65 @@
+package lifebench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One step of every engine over random soups of several sizes and densities.
+ * The soup evolves for the whole iteration, so dense soups thin out the way
+ * they do on screen, and is sown afresh before the next one, so that every
+ * iteration starts from the density it measures rather than from the ash of
+ * the iterations before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoupBenchmark {
+	@Param({ "classic", "bit", "frontier", "sparse", "block", "vector", "offheap" })
+	public String engine;
+
+	@Param({ "60x180", "512x512", "2048x2048" })
+	public String size;
+
+	@Param({ "5", "25", "50" })
+	public int density;
+
+	private Object generation;
+	private long cellsPerStep;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Throwable {
+		String[] dimensions = size.split("x");
+		int rows = Integer.parseInt(dimensions[0]);
+		int columns = Integer.parseInt(dimensions[1]);
+		cellsPerStep = (long) rows * columns;
+		generation = Engines.create(engine, Engines.soup(rows, columns, density), null);
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown() throws Throwable {
+		Engines.close(generation);
+	}
+
+	@Benchmark
+	public long step(CellUpdates counter) throws Throwable {
+		Engines.step(generation);
+		counter.cellUpdates += cellsPerStep;
+		return cellsPerStep;
+	}
+}
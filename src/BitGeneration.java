@@ -0,0 +1,284 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bit-packed stepping engine. Each row of the torus is stored as a long[] with
+ * one bit per cell (column c lives in bit c % 64 of word c / 64), and the next
+ * generation is computed for 64 cells at a time with bitwise full-adders
+ * instead of counting neighbours cell by cell. Life has a kernel of its own;
+ * any other rule goes through the general one, which builds the full 4-bit
+ * neighbour count and selects the rule's mask for it.
+ *
+ * The packed rows are the real state; the boolean[][] handed out by
+ * getCurrentGeneration() and getNextGeneration() is only a view for Grid and
+ * is refreshed after every step.
+ *
+ * Given a ForkJoinPool the torus is stepped in row bands, one task per band,
+ * as PackedGeneration does for every packed engine. Every band reads the
+ * shared current generation (including the wrap rows of its neighbours) and
+ * writes only its own rows of the next generation and of the view.
+ */
+public class BitGeneration extends PackedGeneration {
+	private final int rows;
+	private final int columns;
+	private final int words;// longs per row
+	private final long lastWordMask;// valid bits of the last word of a row
+	private long[][] currentGeneration;
+	private long[][] nextGeneration;
+	private boolean[][] cells;// unpacked view of currentGeneration
+	private boolean viewStale;// stepped without updating cells
+
+	public BitGeneration(boolean[][] cells) {
+		this(cells, null);
+	}
+
+	public BitGeneration(boolean[][] cells, ForkJoinPool pool) {
+		super(cells.length, cells[0].length, pool);
+		rows = getRows();
+		columns = getColumns();
+		words = getWords();
+		lastWordMask = getLastWordMask();
+		currentGeneration = new long[rows][words];
+		nextGeneration = new long[rows][words];
+		setCurrentGeneration(cells);
+	}
+
+	/**
+	 * Advances the packed state by one generation without touching the
+	 * boolean[][] view.
+	 */
+	@Override
+	public void step() {
+		step(false);
+	}
+
+	private void step(boolean updateView) {
+		stepBands(updateView);
+		viewStale = !updateView;
+		long[][] swap = currentGeneration;
+		currentGeneration = nextGeneration;
+		nextGeneration = swap;
+	}
+
+	@Override
+	void stepRows(int fromRow, int toRow, boolean updateView) {
+		for (int row = fromRow; row < toRow; row++) {
+			stepRow(row);
+			if (updateView)
+				unpackRow(nextGeneration[row], cells[row]);
+		}
+	}
+
+	private void stepRow(int row) {
+		stepRow(currentGeneration[(row - 1 + rows) % rows], currentGeneration[row],
+				currentGeneration[(row + 1) % rows], nextGeneration[row]);
+		nextGeneration[row][words - 1] &= lastWordMask;
+	}
+
+	/**
+	 * Computes out from the row and its two neighbours. Overridden by
+	 * VectorGeneration, which hands the words in between the wrapping ends to
+	 * a wider kernel.
+	 */
+	void stepRow(long[] up, long[] middle, long[] down, long[] out) {
+		stepWords(up, middle, down, out, 0, words);
+	}
+
+	/**
+	 * Words [fromWord, toWord) of out from three packed rows of a torus the
+	 * given number of columns wide, with the masks of the general kernel or
+	 * null for Life. PackedGeneration.stepWords() runs every packed engine
+	 * through it.
+	 */
+	static void stepWords(long[] masks, int columns, long[] up, long[] middle, long[] down, long[] out, int fromWord,
+			int toWord) {
+		if (masks == null) {
+			for (int word = fromWord; word < toWord; word++) {
+				out[word] = nextWord(west(up, word, columns), up[word], east(up, word, columns),
+						west(middle, word, columns), middle[word], east(middle, word, columns), west(down, word, columns),
+						down[word], east(down, word, columns));
+			}
+		} else {
+			for (int word = fromWord; word < toWord; word++) {
+				out[word] = nextWord(masks, west(up, word, columns), up[word], east(up, word, columns),
+						west(middle, word, columns), middle[word], east(middle, word, columns), west(down, word, columns),
+						down[word], east(down, word, columns));
+			}
+		}
+	}
+
+	/**
+	 * Conway's B3/S23 for 64 cells at once. The eight neighbour words are summed
+	 * with full-adders: ones holds bit 0 of the count and the four carries hold
+	 * the weight-two part, so the count is 2 or 3 exactly when a single carry is
+	 * set.
+	 */
+	static long nextWord(long upWest, long up, long upEast, long west, long cell, long east, long downWest,
+			long down, long downEast) {
+		long upSum = upWest ^ up ^ upEast;
+		long upCarry = (upWest & up) | (upEast & (upWest ^ up));
+		long middleSum = west ^ east;
+		long middleCarry = west & east;
+		long downSum = downWest ^ down ^ downEast;
+		long downCarry = (downWest & down) | (downEast & (downWest ^ down));
+		long ones = upSum ^ middleSum ^ downSum;
+		long onesCarry = (upSum & middleSum) | (downSum & (upSum ^ middleSum));
+		long oddCarries = upCarry ^ middleCarry ^ downCarry ^ onesCarry;
+		long pairedCarries = (upCarry & middleCarry) | (downCarry & onesCarry);
+		long twoOrThree = oddCarries & ~pairedCarries;
+		return twoOrThree & (ones | cell);
+	}
+
+	/**
+	 * Any outer-totalistic rule for 64 cells at once, given its
+	 * Rule.getWordMasks(). The neighbour count is summed into four bit planes
+	 * (ones, twos, fours, eights) and each plane then picks between halves of
+	 * the mask table, so every bit ends up with the birth and the survival mask
+	 * of its own count without a branch.
+	 */
+	static long nextWord(long[] masks, long upWest, long up, long upEast, long west, long cell, long east,
+			long downWest, long down, long downEast) {
+		long upSum = upWest ^ up ^ upEast;
+		long upCarry = (upWest & up) | (upEast & (upWest ^ up));
+		long middleSum = west ^ east;
+		long middleCarry = west & east;
+		long downSum = downWest ^ down ^ downEast;
+		long downCarry = (downWest & down) | (downEast & (downWest ^ down));
+		long ones = upSum ^ middleSum ^ downSum;
+		long onesCarry = (upSum & middleSum) | (downSum & (upSum ^ middleSum));
+		// Four carries of weight two, summed the same way
+		long carrySum = upCarry ^ middleCarry ^ downCarry;
+		long carryCarry = (upCarry & middleCarry) | (downCarry & (upCarry ^ middleCarry));
+		long twos = carrySum ^ onesCarry;
+		long twosCarry = carrySum & onesCarry;
+		long fours = carryCarry ^ twosCarry;
+		long eights = carryCarry & twosCarry;
+		long born = select(masks, 0, ones, twos, fours, eights);
+		long survives = select(masks, 9, ones, twos, fours, eights);
+		return mux(born, survives, cell);
+	}
+
+	/**
+	 * masks[offset + count] bit by bit, count being the neighbour count held in
+	 * the four planes.
+	 */
+	private static long select(long[] masks, int offset, long ones, long twos, long fours, long eights) {
+		long m01 = mux(masks[offset], masks[offset + 1], ones);
+		long m23 = mux(masks[offset + 2], masks[offset + 3], ones);
+		long m45 = mux(masks[offset + 4], masks[offset + 5], ones);
+		long m67 = mux(masks[offset + 6], masks[offset + 7], ones);
+		long m0to7 = mux(mux(m01, m23, twos), mux(m45, m67, twos), fours);
+		return mux(m0to7, masks[offset + 8], eights);
+	}
+
+	/**
+	 * Bits of a where select is 0 and of b where it is 1.
+	 */
+	private static long mux(long a, long b, long select) {
+		return a ^ ((a ^ b) & select);
+	}
+
+	/**
+	 * Word whose bit j holds the west neighbour of bit j, i.e. column c - 1,
+	 * wrapping column 0 around to the last column.
+	 */
+	private static long west(long[] row, int word, int columns) {
+		long carry;
+		if (word > 0)
+			carry = row[word - 1] >>> 63;
+		else
+			carry = (row[row.length - 1] >>> ((columns - 1) & 63)) & 1L;
+		return (row[word] << 1) | carry;
+	}
+
+	/**
+	 * Word whose bit j holds the east neighbour of bit j, i.e. column c + 1,
+	 * wrapping the last column around to column 0.
+	 */
+	private static long east(long[] row, int word, int columns) {
+		if (word < row.length - 1)
+			return (row[word] >>> 1) | (row[word + 1] << 63);
+		return (row[word] >>> 1) | ((row[0] & 1L) << ((columns - 1) & 63));
+	}
+
+	@Override
+	public boolean isAlive(int row, int column) {
+		return (currentGeneration[row][column >>> 6] & (1L << column)) != 0;
+	}
+
+	@Override
+	public void setAlive(int row, int column, boolean alive) {
+		if (alive)
+			currentGeneration[row][column >>> 6] |= 1L << column;
+		else
+			currentGeneration[row][column >>> 6] &= ~(1L << column);
+		if (!viewStale)
+			cells[row][column] = alive;
+	}
+
+	@Override
+	long getFlippedWord(int row, int word) {
+		return currentGeneration[row][word] ^ nextGeneration[row][word];
+	}
+
+	/**
+	 * The packed rows of the current generation, valid until the next step.
+	 */
+	public long[][] getPackedGeneration() {
+		return currentGeneration;
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int word = 0; word < words; word++) {
+				population += Long.bitCount(currentGeneration[row][word]);
+			}
+		}
+		return population;
+	}
+
+	@Override
+	public boolean[][] getCurrentGeneration() {
+		if (viewStale) {
+			for (int row = 0; row < rows; row++) {
+				unpackRow(currentGeneration[row], cells[row]);
+			}
+			viewStale = false;
+		}
+		return cells;
+	}
+
+	/**
+	 * Packs the given cells into the current generation. The array itself
+	 * becomes the view that is refreshed after each step.
+	 */
+	@Override
+	public void setCurrentGeneration(boolean[][] currentGeneration) {
+		cells = currentGeneration;
+		viewStale = false;
+		clearChanges();
+		for (int row = 0; row < rows; row++) {
+			long[] packed = this.currentGeneration[row];
+			for (int word = 0; word < words; word++) {
+				packed[word] = 0;
+			}
+			for (int column = 0; column < columns; column++) {
+				if (cells[row][column])
+					packed[column >>> 6] |= 1L << column;
+			}
+		}
+	}
+
+	private void unpackRow(long[] packed, boolean[] row) {
+		for (int column = 0; column < columns; column++) {
+			row[column] = (packed[column >>> 6] & (1L << column)) != 0;
+		}
+	}
+
+	@Override
+	public boolean[][] getNextGeneration() {
+		step(true);
+		return cells;
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * Anything cells can be written into: an engine's own storage or a plain
+ * boolean[][] board.
+ */
+public interface CellSink {
+
+	void setAlive(int row, int column, boolean alive);
+}
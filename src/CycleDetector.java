@@ -0,0 +1,115 @@
+import java.util.SplittableRandom;
+
+/**
+ * Notices when a board has died out, settled into a still life or started
+ * oscillating, without comparing whole boards every generation.
+ *
+ * The board is summarised by a 64-bit Zobrist hash: every cell has a random
+ * key and the hash is the XOR of the keys of the live cells, so a birth or a
+ * death flips the hash by one key and each step costs only as much as the
+ * cells it changed. The hashes of the last HISTORY generations are kept in a
+ * ring; meeting the current hash again p generations later means the board
+ * has (almost certainly) become periodic with period p. The empty board
+ * hashes to 0, though a hash of 0 does not prove a board empty. A 64-bit
+ * hash can collide, so verify() can confirm a period exactly by stepping a
+ * copy of the board.
+ */
+public class CycleDetector {
+	public static final int HISTORY = 256;// longest period that can be found
+	private final int rows;
+	private final int columns;
+	private final long[] keys;
+	private final long[] history = new long[HISTORY];
+	private int recorded;// generations in history, at most HISTORY
+	private int next;// ring slot for the next hash
+	private long hash;
+
+	public CycleDetector(int rows, int columns) {
+		this.rows = rows;
+		this.columns = columns;
+		keys = new long[rows * columns];
+		SplittableRandom random = new SplittableRandom(0x5EEDL);
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * Hashes the engine's board from scratch and forgets the history, for when
+	 * the board was replaced rather than stepped.
+	 */
+	public void reset(GenerationEngine engine) {
+		hash = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (engine.isAlive(row, column))
+					hash ^= keys[row * columns + column];
+			}
+		}
+		recorded = 0;
+		next = 0;
+	}
+
+	/**
+	 * An edited cell. The history no longer leads up to the board, so it is
+	 * forgotten.
+	 */
+	public void flip(int cell) {
+		hash ^= keys[cell];
+		recorded = 0;
+		next = 0;
+	}
+
+	/**
+	 * Records a step from the cells it flipped (indices row * columns +
+	 * column) and returns the period the board now seems to repeat with, 1 for
+	 * a still life or an empty board, or 0 when no earlier generation in the
+	 * history matches.
+	 */
+	public int step(int[] changedCells, int changedCount) {
+		history[next] = hash;
+		next = next == HISTORY - 1 ? 0 : next + 1;
+		if (recorded < HISTORY)
+			recorded++;
+		for (int i = 0; i < changedCount; i++) {
+			hash ^= keys[changedCells[i]];
+		}
+		// Most recent first, so the shortest period wins
+		int slot = next;
+		for (int period = 1; period <= recorded; period++) {
+			slot = slot == 0 ? HISTORY - 1 : slot - 1;
+			if (history[slot] == hash)
+				return period;
+		}
+		return 0;
+	}
+
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Whether the engine's board really comes back after the given number of
+	 * generations, checked on a copy so the engine is left alone.
+	 */
+	public boolean verify(GenerationEngine engine, int period) {
+		boolean[][] cells = new boolean[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				cells[row][column] = engine.isAlive(row, column);
+			}
+		}
+		BitGeneration copy = new BitGeneration(cells);
+		copy.setRule(engine.getRule());
+		for (int i = 0; i < period; i++) {
+			copy.step();
+		}
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (copy.isAlive(row, column) != engine.isAlive(row, column))
+					return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,414 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Torus split into tileRows x tileColumns rectangles, each stepped by a
+ * TileWorker process of its own on this host. The workers swap ghost borders
+ * haloWidth cells wide with their neighbours over loopback TCP once every
+ * haloWidth generations and step in between without talking, so a wider halo
+ * trades some redundant stepping of ghost cells for fewer round trips. This
+ * object is the coordinator: it starts the workers, sends them the board,
+ * edits and steps, and assembles what it needs back from them.
+ *
+ * The boolean[][] of getCurrentGeneration() is fetched from the workers when
+ * it is asked for after a step, like the window of SparseUniverse. step(k)
+ * runs k generations in one round trip, which HeadlessRunner uses when it
+ * does not verify every generation; Simulation steps one at a time, since it
+ * tracks the changes of each.
+ *
+ * Tiles are at least haloWidth cells on each side. Set the layout for
+ * Simulation and HeadlessRunner with -Dlife.tiles=RxC and
+ * -Dlife.halo=K. Workers run in the JVM and class path of this one, and are
+ * stopped by close() or when this JVM exits.
+ */
+public class DistributedUniverse implements GenerationEngine {
+	/**
+	 * Tile layout of EngineType.DISTRIBUTED, override with -Dlife.tiles=RxC.
+	 */
+	public static final String TILES = System.getProperty("life.tiles", "2x2");
+
+	/**
+	 * Ghost border of EngineType.DISTRIBUTED, override with -Dlife.halo=K.
+	 */
+	public static final int HALO = Integer.getInteger("life.halo", 1);
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+
+	private final int rows;
+	private final int columns;
+	private final int haloWidth;
+	private final int[] rowBounds;// tile row t covers rows [rowBounds[t], rowBounds[t + 1])
+	private final int[] columnBounds;
+	private final Worker[] workers;
+	private boolean[][] cells;// copy of the tiles, see cellsStale
+	private boolean cellsStale;// stepped or edited by others since cells was fetched
+	private boolean haloStale;// edited since the last exchange
+	private int[] changedCells;// allocated on first use
+	private int changedCount;
+	private boolean changesStale;
+	private Rule rule = Rule.LIFE;
+
+	/**
+	 * The process and connection of one tile.
+	 */
+	private static class Worker {
+		final Process process;
+		Socket socket;
+		DataInputStream in;
+		DataOutputStream out;
+		int firstRow;
+		int endRow;
+		int firstColumn;
+		int endColumn;
+		int peerPort;
+
+		Worker(Process process) {
+			this.process = process;
+		}
+	}
+
+	public DistributedUniverse(boolean[][] cells, int tileRows, int tileColumns, int haloWidth) {
+		rows = cells.length;
+		columns = cells[0].length;
+		this.haloWidth = haloWidth;
+		if (haloWidth < 1 || rows / tileRows < haloWidth || columns / tileColumns < haloWidth)
+			throw new IllegalArgumentException("A " + rows + " x " + columns + " torus cannot be split into "
+					+ tileRows + " x " + tileColumns + " tiles with a halo of " + haloWidth);
+		rowBounds = bounds(rows, tileRows);
+		columnBounds = bounds(columns, tileColumns);
+		workers = new Worker[tileRows * tileColumns];
+		try {
+			start(tileRows, tileColumns);
+		} catch (IOException e) {
+			close();
+			throw new UncheckedIOException("Couldn't start the tile workers", e);
+		}
+		setCurrentGeneration(cells);
+	}
+
+	/**
+	 * Creates the engine for EngineType.DISTRIBUTED, laid out by TILES and
+	 * HALO.
+	 */
+	public static DistributedUniverse create(boolean[][] cells) {
+		String[] tiles = TILES.toLowerCase().split("x");
+		if (tiles.length != 2)
+			throw new IllegalArgumentException("Not a tile layout: " + TILES);
+		return new DistributedUniverse(cells, Integer.parseInt(tiles[0].trim()), Integer.parseInt(tiles[1].trim()),
+				HALO);
+	}
+
+	/**
+	 * Splits length cells into parts as even as possible.
+	 */
+	private static int[] bounds(int length, int parts) {
+		int[] bounds = new int[parts + 1];
+		for (int part = 0; part <= parts; part++) {
+			bounds[part] = (int) ((long) length * part / parts);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Launches the workers, waits for each to report its peer port, then
+	 * sends every worker its tile and the ports of its east and south
+	 * neighbours.
+	 */
+	private void start(int tileRows, int tileColumns) throws IOException {
+		try (ServerSocket server = new ServerSocket(0, workers.length, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			for (int index = 0; index < workers.length; index++) {
+				ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+						"TileWorker", String.valueOf(server.getLocalPort()), String.valueOf(index));
+				workers[index] = new Worker(builder.inheritIO().start());
+			}
+			for (int i = 0; i < workers.length; i++) {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+				int index = in.readInt();
+				Worker worker = workers[index];
+				worker.socket = socket;
+				worker.in = in;
+				worker.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+				worker.peerPort = in.readInt();
+				worker.firstRow = rowBounds[index / tileColumns];
+				worker.endRow = rowBounds[index / tileColumns + 1];
+				worker.firstColumn = columnBounds[index % tileColumns];
+				worker.endColumn = columnBounds[index % tileColumns + 1];
+			}
+		}
+		for (int index = 0; index < workers.length; index++) {
+			Worker worker = workers[index];
+			int tileRow = index / tileColumns;
+			int tileColumn = index % tileColumns;
+			DataOutputStream out = worker.out;
+			out.writeInt(rows);
+			out.writeInt(columns);
+			out.writeInt(worker.firstRow);
+			out.writeInt(worker.firstColumn);
+			out.writeInt(worker.endRow);
+			out.writeInt(worker.endColumn);
+			out.writeInt(haloWidth);
+			out.writeUTF(rule.toString());
+			out.writeInt(workers[tileRow * tileColumns + (tileColumn + 1) % tileColumns].peerPort);
+			out.writeInt(workers[(tileRow + 1) % tileRows * tileColumns + tileColumn].peerPort);
+			out.flush();
+		}
+		awaitDone();
+	}
+
+	/**
+	 * Reads the DONE every worker replies to the last command.
+	 */
+	private void awaitDone() throws IOException {
+		for (Worker worker : workers) {
+			if (worker.in.readByte() != TileWorker.DONE)
+				throw new IOException("Tile worker out of step");
+		}
+	}
+
+	private void flush() throws IOException {
+		for (Worker worker : workers) {
+			worker.out.flush();
+		}
+	}
+
+	private Worker owner(int row, int column) {
+		int tileRow = Arrays.binarySearch(rowBounds, row);
+		if (tileRow < 0)
+			tileRow = -tileRow - 2;
+		int tileColumn = Arrays.binarySearch(columnBounds, column);
+		if (tileColumn < 0)
+			tileColumn = -tileColumn - 2;
+		return workers[tileRow * (columnBounds.length - 1) + tileColumn];
+	}
+
+	@Override
+	public void step() {
+		step(1);
+	}
+
+	/**
+	 * Steps the given number of generations with a single round trip to the
+	 * workers.
+	 */
+	public void step(int generations) {
+		try {
+			for (Worker worker : workers) {
+				worker.out.writeByte(TileWorker.STEP);
+				worker.out.writeBoolean(haloStale);
+				worker.out.writeInt(generations);
+			}
+			flush();
+			awaitDone();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+		haloStale = false;
+		cellsStale = true;
+		changesStale = true;
+	}
+
+	/**
+	 * Fetches every tile into cells.
+	 */
+	private void fetchCells() {
+		try {
+			for (Worker worker : workers) {
+				worker.out.writeByte(TileWorker.CELLS);
+			}
+			flush();
+			for (Worker worker : workers) {
+				TileWorker.readCells(worker.in, cells, worker.firstRow, worker.endRow, worker.firstColumn,
+						worker.endColumn);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+	}
+
+	@Override
+	public boolean[][] getCurrentGeneration() {
+		if (cellsStale) {
+			fetchCells();
+			cellsStale = false;
+		}
+		return cells;
+	}
+
+	/**
+	 * Sends the whole board to the workers, each its own tile.
+	 */
+	@Override
+	public void setCurrentGeneration(boolean[][] currentGeneration) {
+		cells = currentGeneration;
+		try {
+			for (Worker worker : workers) {
+				worker.out.writeByte(TileWorker.LOAD);
+				TileWorker.writeCells(worker.out, cells, worker.firstRow, worker.endRow, worker.firstColumn,
+						worker.endColumn);
+				worker.out.flush();
+			}
+			awaitDone();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+		cellsStale = false;
+		haloStale = true;
+		changedCount = 0;
+		changesStale = false;
+	}
+
+	@Override
+	public boolean[][] getNextGeneration() {
+		step();
+		return getCurrentGeneration();
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		try {
+			for (Worker worker : workers) {
+				worker.out.writeByte(TileWorker.POPULATION);
+			}
+			flush();
+			for (Worker worker : workers) {
+				population += worker.in.readLong();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+		return population;
+	}
+
+	/**
+	 * Cells the last step flipped, gathered from every worker. The torus must
+	 * have fewer than 2^31 cells.
+	 */
+	@Override
+	public int[] getChangedCells() {
+		if (changesStale)
+			fetchChanges();
+		return changedCells;
+	}
+
+	@Override
+	public int getChangedCount() {
+		if (changesStale)
+			fetchChanges();
+		return changedCount;
+	}
+
+	private void fetchChanges() {
+		if (changedCells == null)
+			changedCells = new int[(int) Math.min((long) rows * columns, Integer.MAX_VALUE - 8)];
+		changedCount = 0;
+		try {
+			for (Worker worker : workers) {
+				worker.out.writeByte(TileWorker.CHANGES);
+			}
+			flush();
+			for (Worker worker : workers) {
+				int count = worker.in.readInt();
+				for (int i = 0; i < count; i++) {
+					changedCells[changedCount++] = worker.in.readInt();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+		changesStale = false;
+	}
+
+	@Override
+	public boolean isAlive(int row, int column) {
+		return getCurrentGeneration()[row][column];
+	}
+
+	/**
+	 * Streams the edit to the worker owning the cell, without waiting for it.
+	 * The next step starts with a halo exchange so the neighbours see it.
+	 */
+	@Override
+	public void setAlive(int row, int column, boolean alive) {
+		Worker worker = owner(row, column);
+		try {
+			worker.out.writeByte(TileWorker.EDIT);
+			worker.out.writeInt(row);
+			worker.out.writeInt(column);
+			worker.out.writeBoolean(alive);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+		if (!cellsStale)
+			cells[row][column] = alive;
+		haloStale = true;
+	}
+
+	@Override
+	public Rule getRule() {
+		return rule;
+	}
+
+	@Override
+	public void setRule(Rule rule) {
+		try {
+			for (Worker worker : workers) {
+				worker.out.writeByte(TileWorker.RULE);
+				worker.out.writeUTF(rule.toString());
+			}
+			flush();
+			awaitDone();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Lost a tile worker", e);
+		}
+		this.rule = rule;
+	}
+
+	/**
+	 * Tells the workers to quit and waits for them, killing any that do not.
+	 */
+	@Override
+	public void close() {
+		for (Worker worker : workers) {
+			if (worker == null)
+				continue;
+			try {
+				if (worker.out != null) {
+					worker.out.writeByte(TileWorker.QUIT);
+					worker.out.flush();
+				}
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+		for (Worker worker : workers) {
+			if (worker == null)
+				continue;
+			try {
+				if (worker.socket != null)
+					worker.socket.close();
+				if (!worker.process.waitFor(5, TimeUnit.SECONDS))
+					worker.process.destroyForcibly();
+			} catch (IOException e) {
+				worker.process.destroyForcibly();
+			} catch (InterruptedException e) {
+				worker.process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The stepping engines a Simulation can run on.
+ */
+public enum EngineType {
+	CLASSIC, BIT, FRONTIER, SPARSE, BLOCK, VECTOR, DISTRIBUTED, OFFHEAP, MAPPED;
+
+	/**
+	 * Creates an engine of this type over the given cells. Only the engines
+	 * that step in row bands use the pool.
+	 */
+	public GenerationEngine create(boolean[][] cells, ForkJoinPool pool) {
+		switch (this) {
+		case CLASSIC:
+			return new Generation(cells);
+		case FRONTIER:
+			return new FrontierGeneration(cells);
+		case SPARSE:
+			return new SparseUniverse(cells);
+		case BLOCK:
+			return new BlockGeneration(cells);
+		case VECTOR:
+			return new VectorGeneration(cells, pool);
+		case DISTRIBUTED:
+			return DistributedUniverse.create(cells);
+		case OFFHEAP:
+			return new OffHeapGeneration(cells, pool);
+		case MAPPED:
+			return MappedUniverse.create(cells, pool);
+		default:
+			return new BitGeneration(cells, pool);
+		}
+	}
+
+	/**
+	 * Creates an engine of this type stepping with the given rule. Throws
+	 * IllegalArgumentException if the engine cannot run it.
+	 */
+	public GenerationEngine create(boolean[][] cells, ForkJoinPool pool, Rule rule) {
+		GenerationEngine engine = create(cells, pool);
+		engine.setRule(rule);
+		return engine;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ * Stepping engine that only re-evaluates the active frontier: the cells that
+ * changed in the previous generation and their eight neighbours. A cell outside
+ * the frontier saw neither itself nor any neighbour change, so its next state
+ * is its current state and the result is identical to a full sweep, but a step
+ * costs in proportion to the activity instead of the area of the board.
+ *
+ * Cells are addressed by their flat index row * columns + column. The frontier
+ * is an int[] list deduplicated with a bitmap, so no boxed collections are
+ * touched while stepping.
+ *
+ * The argument holds for any rule: the next state is a function of the 3x3
+ * neighbourhood alone, looked up in the rule's table.
+ */
+public class FrontierGeneration implements GenerationEngine {
+	private final int rows;
+	private final int columns;
+	private boolean[][] cells;
+	private final long[] candidateBits;// one bit per cell already in candidates
+	private final int[] candidates;
+	private int candidateCount;
+	private int[] changed;// cells flipped by the last step
+	private int changedCount;
+	private boolean fullSweep;// no history yet, every cell is a candidate
+	private Rule rule = Rule.LIFE;
+	private boolean[] table = rule.getTable();
+
+	public FrontierGeneration(boolean[][] cells) {
+		rows = cells.length;
+		columns = cells[0].length;
+		candidateBits = new long[(rows * columns + 63) >>> 6];
+		candidates = new int[rows * columns];
+		changed = new int[rows * columns];
+		setCurrentGeneration(cells);
+	}
+
+	@Override
+	public void step() {
+		collectCandidates();
+		changedCount = 0;
+		for (int i = 0; i < candidateCount; i++) {
+			int cell = candidates[i];
+			candidateBits[cell >>> 6] &= ~(1L << cell);
+			int row = cell / columns;
+			int column = cell - row * columns;
+			if (nextState(row, column) != cells[row][column])
+				changed[changedCount++] = cell;
+		}
+		// Flip only after every candidate has been evaluated against this generation
+		for (int i = 0; i < changedCount; i++) {
+			int row = changed[i] / columns;
+			int column = changed[i] - row * columns;
+			cells[row][column] = !cells[row][column];
+		}
+		fullSweep = false;
+	}
+
+	private void collectCandidates() {
+		candidateCount = 0;
+		if (fullSweep) {
+			for (int cell = 0; cell < rows * columns; cell++) {
+				candidates[candidateCount++] = cell;
+			}
+			return;
+		}
+		for (int i = 0; i < changedCount; i++) {
+			int row = changed[i] / columns;
+			int column = changed[i] - row * columns;
+			int up = row == 0 ? rows - 1 : row - 1;
+			int down = row == rows - 1 ? 0 : row + 1;
+			int left = column == 0 ? columns - 1 : column - 1;
+			int right = column == columns - 1 ? 0 : column + 1;
+			addCandidate(up, left);
+			addCandidate(up, column);
+			addCandidate(up, right);
+			addCandidate(row, left);
+			addCandidate(row, column);
+			addCandidate(row, right);
+			addCandidate(down, left);
+			addCandidate(down, column);
+			addCandidate(down, right);
+		}
+	}
+
+	private void addCandidate(int row, int column) {
+		int cell = row * columns + column;
+		long bit = 1L << cell;
+		if ((candidateBits[cell >>> 6] & bit) == 0) {
+			candidateBits[cell >>> 6] |= bit;
+			candidates[candidateCount++] = cell;
+		}
+	}
+
+	private boolean nextState(int row, int column) {
+		int up = row == 0 ? rows - 1 : row - 1;
+		int down = row == rows - 1 ? 0 : row + 1;
+		int left = column == 0 ? columns - 1 : column - 1;
+		int right = column == columns - 1 ? 0 : column + 1;
+		int neighbourhood = (cells[up][left] ? 256 : 0) | (cells[up][column] ? 128 : 0) | (cells[up][right] ? 64 : 0)
+				| (cells[row][left] ? 32 : 0) | (cells[row][column] ? 16 : 0) | (cells[row][right] ? 8 : 0)
+				| (cells[down][left] ? 4 : 0) | (cells[down][column] ? 2 : 0) | (cells[down][right] ? 1 : 0);
+		return table[neighbourhood];
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (cells[row][column])
+					population++;
+			}
+		}
+		return population;
+	}
+
+	@Override
+	public int[] getChangedCells() {
+		return changed;
+	}
+
+	@Override
+	public int getChangedCount() {
+		return changedCount;
+	}
+
+	@Override
+	public boolean isAlive(int row, int column) {
+		return cells[row][column];
+	}
+
+	/**
+	 * An edited cell joins the changed cells so that it and its neighbours are
+	 * re-evaluated by the next step.
+	 */
+	@Override
+	public void setAlive(int row, int column, boolean alive) {
+		if (cells[row][column] == alive)
+			return;
+		cells[row][column] = alive;
+		if (changedCount < changed.length)
+			changed[changedCount++] = row * columns + column;
+		else
+			fullSweep = true;
+	}
+
+	@Override
+	public boolean[][] getCurrentGeneration() {
+		return cells;
+	}
+
+	/**
+	 * Adopts the given cells; with no record of what changed the next step
+	 * sweeps the whole board.
+	 */
+	@Override
+	public void setCurrentGeneration(boolean[][] currentGeneration) {
+		cells = currentGeneration;
+		changedCount = 0;
+		fullSweep = true;
+	}
+
+	@Override
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Adopts the rule; cells off the frontier are only known to stay put under
+	 * the old one, so the next step sweeps the whole board.
+	 */
+	@Override
+	public void setRule(Rule rule) {
+		this.rule = rule;
+		table = rule.getTable();
+		changedCount = 0;
+		fullSweep = true;
+	}
+
+	@Override
+	public boolean[][] getNextGeneration() {
+		step();
+		return cells;
+	}
+}
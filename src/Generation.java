@@ -1,97 +1,124 @@
 /**
+ * Steps the board one cell at a time. The 3x3 neighbourhood of each cell is
+ * kept as a 9-bit index while sliding along a row, three bits (up, cell,
+ * down) entering per column, and the rule's lookup table gives the next state
+ * without counting neighbours or branching on the count.
  * 
  * @author TaraPrasad
  *
  */
-public class Generation {
+public class Generation implements GenerationEngine {
 	private boolean[][] currentGeneration;
 	private boolean[][] nextGeneration;
-	private int[][] neighborCount;// For the current generation
+	private Rule rule = Rule.LIFE;
+	private boolean[] table = rule.getTable();
+	private int[] changedCells;// flat indices of the cells the last step flipped
+	private int changedCount;
 
+	/**
+	 * The two generations are a pair of buffers that swap roles every step, so
+	 * stepping allocates nothing.
+	 */
 	public Generation(boolean[][] cells) {
 		currentGeneration = cells;
-		neighborCount = new int[currentGeneration.length][currentGeneration[0].length];
 		nextGeneration = new boolean[currentGeneration.length][currentGeneration[0].length];
+		changedCells = new int[currentGeneration.length * currentGeneration[0].length];
 	}
 
 	private void calculateNextGeneration() {
-		for (int row = 0; row < currentGeneration.length; row++) {
-			for (int column = 0; column < currentGeneration[0].length; column++) {
-				switch (neighborCount[row][column]) {
-				case 0:
-					nextGeneration[row][column] = false;
-					break;
-				case 1:
-					nextGeneration[row][column] = false;
-					break;
-				case 2:
-					nextGeneration[row][column] = currentGeneration[row][column];
-					break;
-				case 3:
-					nextGeneration[row][column] = true;
-					break;
-				case 4:
-				case 5:
-				case 6:
-				case 7:
-				case 8:
-					nextGeneration[row][column] = false;
-					break;
-				}
-			}
-		}
-	}
-
-	/**
-	 * row-1 column-1 row-1 row-1 column+1
-	 * 
-	 * column-1 column+1
-	 * 
-	 * row+ column+1 row+1 row+1 column+1
-	 */
-	private void calculateNeighbors() {
 		int n = currentGeneration.length;
 		int m = currentGeneration[0].length;
+		changedCount = 0;
 		for (int row = 0; row < n; row++) {
+			boolean[] up = currentGeneration[(row - 1 + n) % n];
+			boolean[] middle = currentGeneration[row];
+			boolean[] down = currentGeneration[(row + 1) % n];
+			boolean[] next = nextGeneration[row];
+			// Columns m - 1 and 0 are in before the first cell, the column entering last is the right one
+			int neighbourhood = (column(up, middle, down, m - 1) << 3) | column(up, middle, down, 0);
 			for (int column = 0; column < m; column++) {
-				neighborCount[row][column] = 0;
-				// Row and Column Bounds should be checked first
-				if (currentGeneration[(row - 1 + n) % n][(column - 1 + m) % m] == true)// up-left neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[(row - 1 + n) % n][column] == true)// up neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[row][(column - 1 + m) % m] == true)// left neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[(row + 1) % n][(column - 1 + m) % m] == true)// left-down neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[(row - 1 + n) % n][(column + 1) % m] == true)// right-up neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[(row + 1) % n][column] == true)// down neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[row][(column + 1) % m] == true)// right neighbor
-					neighborCount[row][column]++;
-				if (currentGeneration[(row + 1) % n][(column + 1) % m] == true) // right-down neighbor
-					neighborCount[row][column]++;
+				neighbourhood = ((neighbourhood << 3) | column(up, middle, down, column + 1 == m ? 0 : column + 1)) & 511;
+				next[column] = table[neighbourhood];
+				if (next[column] != middle[column])
+					changedCells[changedCount++] = row * m + column;
 			}
 		}
 	}
-	
+
+	/**
+	 * Three bits of one column of a neighbourhood, the middle row in bit 1 so
+	 * that the centre cell lands on bit 4 of the index.
+	 */
+	private static int column(boolean[] up, boolean[] middle, boolean[] down, int column) {
+		return (up[column] ? 4 : 0) | (middle[column] ? 2 : 0) | (down[column] ? 1 : 0);
+	}
+
+	@Override
 	public boolean[][] getCurrentGeneration() {
 		return currentGeneration;
 	}
 
+	@Override
 	public void setCurrentGeneration(boolean[][] currentGeneration) {
+		if (currentGeneration == nextGeneration)// the spare buffer, keep the pair distinct
+			nextGeneration = this.currentGeneration;
 		this.currentGeneration = currentGeneration;
 	}
 
+	@Override
 	public boolean[][] getNextGeneration() {
-		calculateNeighbors();
 		calculateNextGeneration();// next generation is initialized
+		boolean[][] swap = currentGeneration;
 		currentGeneration = nextGeneration;
-		return nextGeneration;
+		nextGeneration = swap;
+		return currentGeneration;
+	}
+
+	@Override
+	public void step() {
+		getNextGeneration();
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (int row = 0; row < currentGeneration.length; row++) {
+			for (int column = 0; column < currentGeneration[0].length; column++) {
+				if (currentGeneration[row][column])
+					population++;
+			}
+		}
+		return population;
+	}
+
+	@Override
+	public int[] getChangedCells() {
+		return changedCells;
+	}
+
+	@Override
+	public int getChangedCount() {
+		return changedCount;
+	}
+
+	@Override
+	public boolean isAlive(int row, int column) {
+		return currentGeneration[row][column];
+	}
+
+	@Override
+	public void setAlive(int row, int column, boolean alive) {
+		currentGeneration[row][column] = alive;
+	}
+
+	@Override
+	public Rule getRule() {
+		return rule;
 	}
 
-	public void setNextGeneration(boolean[][] nextGeneration) {
-		this.nextGeneration = nextGeneration;
+	@Override
+	public void setRule(Rule rule) {
+		this.rule = rule;
+		table = rule.getTable();
 	}
 }
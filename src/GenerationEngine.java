@@ -0,0 +1,89 @@
+/**
+ * Common contract of the stepping engines that can drive a Simulation.
+ *
+ * The boolean[][] returned by getCurrentGeneration() and getNextGeneration()
+ * is the engine's current buffer. It is only valid until the next step, when
+ * an engine may swap it for another buffer, and is read-only for its users:
+ * Grid paints it, and every edit goes through setAlive() so the engine can
+ * keep its own representation in sync.
+ */
+public interface GenerationEngine extends CellSink {
+
+	boolean[][] getCurrentGeneration();
+
+	/**
+	 * Replaces the whole board. The engine adopts the given array as its
+	 * current buffer.
+	 */
+	void setCurrentGeneration(boolean[][] currentGeneration);
+
+	/**
+	 * Steps one generation and returns the new current buffer.
+	 */
+	boolean[][] getNextGeneration();
+
+	/**
+	 * Steps one generation as fast as the engine can. Engines that keep their
+	 * own representation may leave the boolean[][] buffer stale until it is
+	 * next asked for; isAlive() and getPopulation() are always current.
+	 */
+	void step();
+
+	long getPopulation();
+
+	/**
+	 * The cells the last step flipped, as indices row * columns + column. Only
+	 * the first getChangedCount() entries are meaningful, and only until the
+	 * next step. Edits made since the step may or may not be included. Null
+	 * when the engine did not list them, because too many cells flipped or the
+	 * board has too many to index; the whole board may then have changed.
+	 */
+	int[] getChangedCells();
+
+	int getChangedCount();
+
+	boolean isAlive(int row, int column);
+
+	void setAlive(int row, int column, boolean alive);
+
+	/**
+	 * The rule the engine steps with, Rule.LIFE unless setRule() was called.
+	 */
+	Rule getRule();
+
+	/**
+	 * Switches rule from the next step on. Throws IllegalArgumentException
+	 * for a rule the engine cannot run.
+	 */
+	void setRule(Rule rule);
+
+	/**
+	 * Whether the board is only a window onto a larger universe, so that what
+	 * the board does is not what the universe does. False for the torus
+	 * engines, whose board is the whole universe.
+	 */
+	default boolean isWindow() {
+		return false;
+	}
+
+	/**
+	 * Kills every cell. The default goes over the board with setAlive(),
+	 * engines with a faster way or more cells than the board override it.
+	 */
+	default void clear() {
+		boolean[][] cells = getCurrentGeneration();
+		for (int row = 0; row < cells.length; row++) {
+			for (int column = 0; column < cells[0].length; column++) {
+				if (isAlive(row, column))
+					setAlive(row, column, false);
+			}
+		}
+	}
+
+	/**
+	 * Releases what the engine holds besides Java objects, such as worker
+	 * processes. The engine must not be used afterwards.
+	 */
+	default void close() {
+	}
+}
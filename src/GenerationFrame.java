@@ -0,0 +1,85 @@
+/**
+ * Copy of one generation as handed from the stepping thread to Grid through a
+ * TripleBuffer, together with the cells that changed since the previously
+ * published frame. The packed rows of a BitGeneration or OffHeapGeneration
+ * are copied as they are, so Grid never reads a board that is being stepped
+ * or freed.
+ */
+public class GenerationFrame {
+	private boolean[][] cells;
+	private long[][] packedCells;
+	private boolean packed;// packedCells holds the frame instead of cells
+	private int[] changedCells = new int[0];
+	private int changedCount;
+	private boolean fullRepaint;
+	private int generationNumber;
+
+	/**
+	 * Copies the engine's current generation. A null changedCells means the
+	 * whole board may have changed.
+	 */
+	public void copyFrom(GenerationEngine engine, int generationNumber, int[] changedCells, int changedCount) {
+		this.generationNumber = generationNumber;
+		packed = engine instanceof BitGeneration || engine instanceof OffHeapGeneration;
+		if (engine instanceof BitGeneration) {
+			long[][] source = ((BitGeneration) engine).getPackedGeneration();
+			if (packedCells == null || packedCells.length != source.length || packedCells[0].length != source[0].length)
+				packedCells = new long[source.length][source[0].length];
+			for (int row = 0; row < source.length; row++) {
+				System.arraycopy(source[row], 0, packedCells[row], 0, source[row].length);
+			}
+		} else if (engine instanceof OffHeapGeneration) {
+			OffHeapBoard source = ((OffHeapGeneration) engine).getBoard();
+			if (packedCells == null || packedCells.length != source.getRows() || packedCells[0].length != source.getWords())
+				packedCells = new long[source.getRows()][source.getWords()];
+			for (int row = 0; row < source.getRows(); row++) {
+				source.readRow(row, packedCells[row]);
+			}
+		} else {
+			boolean[][] source = engine.getCurrentGeneration();
+			if (cells == null || cells.length != source.length || cells[0].length != source[0].length)
+				cells = new boolean[source.length][source[0].length];
+			for (int row = 0; row < source.length; row++) {
+				System.arraycopy(source[row], 0, cells[row], 0, source[row].length);
+			}
+		}
+		fullRepaint = changedCells == null;
+		if (fullRepaint) {
+			this.changedCount = 0;
+		} else {
+			if (this.changedCells.length < changedCount)
+				this.changedCells = new int[changedCount];
+			System.arraycopy(changedCells, 0, this.changedCells, 0, changedCount);
+			this.changedCount = changedCount;
+		}
+	}
+
+	/**
+	 * Set when the previous frame was never shown, so the changes recorded here
+	 * are not enough to bring the display up to date.
+	 */
+	public void setFullRepaint(boolean fullRepaint) {
+		this.fullRepaint = fullRepaint;
+	}
+
+	/**
+	 * Hands the frame to Grid, repainting only the changed cells when possible.
+	 */
+	public void showOn(Grid grid) {
+		if (packed) {
+			if (fullRepaint)
+				grid.updateGrid(packedCells);
+			else
+				grid.updateGrid(packedCells, changedCells, changedCount);
+		} else {
+			if (fullRepaint)
+				grid.updateGrid(cells);
+			else
+				grid.updateGrid(cells, changedCells, changedCount);
+		}
+	}
+
+	public int getGenerationNumber() {
+		return generationNumber;
+	}
+}
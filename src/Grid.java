@@ -2,37 +2,135 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Stroke;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 /**
- * 
+ * Paints a viewport onto the board: the mouse wheel zooms around the pointer
+ * and dragging with the right button pans. At zoom 1 the whole board fills the
+ * panel as it always did.
+ *
+ * The cells are written straight into the int[] raster of a screen-sized image,
+ * one pixel at a time, by looking up the cell under each pixel. Only pixels in
+ * the clip are touched, so painting costs in proportion to the screen and not
+ * to the board. When more than one cell falls on a pixel the colour comes from
+ * a density mipmap instead: level k counts the live cells of every 2^k x 2^k
+ * block, it is built when first needed and then kept up to date from the
+ * changed cells of each generation. The grid lines are drawn into a transparent
+ * overlay that is only rebuilt when the panel is resized or the view moves,
+ * and are left out once cells get too small for them.
+ *
+ * After a step only the regions holding changed cells are repainted. Changed
+ * cells are gathered into blocks of BLOCK_SIZE x BLOCK_SIZE cells, adjacent
+ * dirty blocks are merged into rectangles and each rectangle is painted on
+ * its own; repaint() would let the RepaintManager union them into one large
+ * area again.
+ *
  *@author TaraPrasad
  *
  */
 
 public class Grid extends JPanel {
-	private double width;
+	private static final int ALIVE_RGB = 0xFFFFFF;
+	private static final int DEAD_RGB = 0x000000;
+	private static final Stroke LINE_STROKE = new BasicStroke(1.0f);
+	private static final int BLOCK_SIZE = 8;
+	private static final int MAX_DIRTY_RECTANGLES = 32;// more than this and the whole grid is repainted
+	private static final double ZOOM_STEP = 1.25;// per notch of the mouse wheel
+	private static final double MAX_CELL_PIXELS = 64;
+	private static final double MIN_LINE_CELL_PIXELS = 3;// no grid lines below this cell size
+	private double width;// pixels per cell at the current zoom
 	private double height;
 	private boolean[][] cells;
+	private long[][] packedCells;// rows of a BitGeneration, painted instead of cells when set
+	private int rows;
+	private int columns;
+	private double zoom = 1;
+	private double viewRow;// cell at the top left corner of the panel
+	private double viewColumn;
+	private BufferedImage screenImage;
+	private int[] pixels;// raster of screenImage, one int per pixel
+	private BufferedImage linesImage;
+	private int[][] density;// density[k - 1] counts the live cells of each 2^k x 2^k block
+	private boolean densityStale = true;
+	private boolean[] dirtyBlocks;
+	private int blockRows;
+	private int blockColumns;
+	private SimulationMetrics metrics;// told how long each paint takes, when set
 
 	public Grid(boolean[][] cells) {
-		this.cells = cells;
+		updateGrid(cells);
 //		setBackground(new Color(0xCC1100));
 		setBackground(Color.BLACK);
+		MouseAdapter viewportListener = new MouseAdapter() {
+			private int lastX;
+			private int lastY;
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				lastX = e.getX();
+				lastY = e.getY();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if (!SwingUtilities.isRightMouseButton(e))
+					return;
+				updateScale();
+				setView(viewRow - (e.getY() - lastY) / height, viewColumn - (e.getX() - lastX) / width);
+				lastX = e.getX();
+				lastY = e.getY();
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				zoomAt(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+			}
+		};
+		addMouseListener(viewportListener);
+		addMouseMotionListener(viewportListener);
+		addMouseWheelListener(viewportListener);
 	}
 
 	@Override
 	protected void paintComponent(Graphics g) {
+		long start = System.nanoTime();
 		super.paintComponent(g);
-		Graphics2D g2 = (Graphics2D) g;
-		// Draw the cells
-		drawCells(g2);
+		paintCells((Graphics2D) g);
+		if (metrics != null)
+			metrics.recordRender(System.nanoTime() - start);
+	}
+
+	private void paintCells(Graphics2D g2) {
+		if (getWidth() == 0 || getHeight() == 0)
+			return;
+		if (screenImage == null || screenImage.getWidth() != getWidth() || screenImage.getHeight() != getHeight()) {
+			screenImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) screenImage.getRaster().getDataBuffer()).getData();
+		}
+		// Draw the cells, refreshing only the part of the raster being painted
+		Rectangle clip = g2.getClipBounds();
+		if (clip == null)
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		clip = clip.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+		if (clip.isEmpty())
+			return;
+		updateScale();
+		fillPixels(clip.x, clip.y, clip.x + clip.width, clip.y + clip.height);
+		g2.drawImage(screenImage, 0, 0, null);
 		//Draw the lines
-		Stroke oldStroke = g2.getStroke();
-		g2.setStroke(new BasicStroke(1.0f));
-		drawLines(g2);
-		g2.setStroke(oldStroke);
+		if (width >= MIN_LINE_CELL_PIXELS && height >= MIN_LINE_CELL_PIXELS)
+			g2.drawImage(linesImage(), 0, 0, null);
 		/*Filling � is a process of painting the shape�s interior with solid color or a color gradient, or a texture pattern
 		Stroking � is a process of drawing a shape�s outline applying stroke width, line style, and color attribute
 		Stroke oldStroke = g2.getStroke();
@@ -41,46 +139,335 @@ public class Grid extends JPanel {
 		g2.setStroke(oldStroke);*/
 	}
 
-	private void drawCells(Graphics g) {
-		width = (double) this.getWidth() / cells[0].length;
-		height = (double) this.getHeight() / cells.length;
-		g.setColor(Color.WHITE);
-		for (int row = 0; row < cells.length; row++) {
-			for (int column = 0; column < cells[0].length; column++) {
-				if (cells[row][column] == true) {
-					g.fillRect((int) Math.round (column * width), (int) Math.round (row * height), (int) Math.round( width + 1), (int)  Math.round(height));
+	private void updateScale() {
+		width = (double) this.getWidth() / columns * zoom;
+		height = (double) this.getHeight() / rows * zoom;
+	}
+
+	/**
+	 * Fills the pixels from (fromX, fromY) up to (toX, toY), exclusive, with the
+	 * cell or the mipmap block under each of them.
+	 */
+	private void fillPixels(int fromX, int fromY, int toX, int toY) {
+		int panelWidth = getWidth();
+		// Cells per pixel along the denser axis decides the mipmap level
+		int level = 0;
+		double cellsPerPixel = Math.min(1 / width, 1 / height);
+		while (level < 30 && (2 << level) <= cellsPerPixel)
+			level++;
+		int[] columnOf = new int[toX - fromX];
+		for (int x = fromX; x < toX; x++) {
+			columnOf[x - fromX] = Math.min(columns - 1, (int) (viewColumn + (x + 0.5) / width));
+		}
+		if (level > 0) {
+			if (densityStale)
+				buildDensity();
+			level = Math.min(level, density.length);
+			int[] counts = density[level - 1];
+			int levelColumns = (columns + (1 << level) - 1) >> level;
+			int blockCells = 1 << (2 * level);
+			for (int y = fromY; y < toY; y++) {
+				int row = Math.min(rows - 1, (int) (viewRow + (y + 0.5) / height));
+				int offset = y * panelWidth;
+				int countOffset = (row >> level) * levelColumns;
+				for (int x = fromX; x < toX; x++) {
+					int count = counts[countOffset + (columnOf[x - fromX] >> level)];
+					pixels[offset + x] = count == 0 ? DEAD_RGB : densityColour(count, blockCells);
+				}
+			}
+		} else if (packedCells != null) {
+			// Read the packed words bit by bit straight into pixels
+			for (int y = fromY; y < toY; y++) {
+				long[] packed = packedCells[Math.min(rows - 1, (int) (viewRow + (y + 0.5) / height))];
+				int offset = y * panelWidth;
+				for (int x = fromX; x < toX; x++) {
+					int column = columnOf[x - fromX];
+					pixels[offset + x] = (int) -((packed[column >>> 6] >>> column) & 1L) & ALIVE_RGB;
+				}
+			}
+		} else {
+			for (int y = fromY; y < toY; y++) {
+				boolean[] cellRow = cells[Math.min(rows - 1, (int) (viewRow + (y + 0.5) / height))];
+				int offset = y * panelWidth;
+				for (int x = fromX; x < toX; x++) {
+					pixels[offset + x] = cellRow[columnOf[x - fromX]] ? ALIVE_RGB : DEAD_RGB;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grey that brightens with the share of live cells in a block, never so dark
+	 * that a lone cell disappears.
+	 */
+	private static int densityColour(int count, int blockCells) {
+		int grey = 0x40 + (0xBF * Math.min(count, blockCells)) / blockCells;
+		return grey * 0x010101 & ALIVE_RGB;
+	}
+
+	private boolean isAlive(int row, int column) {
+		if (packedCells != null)
+			return ((packedCells[row][column >>> 6] >>> column) & 1L) != 0;
+		return cells[row][column];
+	}
+
+	private void buildDensity() {
+		int levels = 0;
+		while ((rows - 1) >> levels > 0 || (columns - 1) >> levels > 0)
+			levels++;
+		density = new int[Math.max(1, levels)][];
+		for (int level = 1; level <= density.length; level++) {
+			density[level - 1] = new int[((rows + (1 << level) - 1) >> level) * ((columns + (1 << level) - 1) >> level)];
+		}
+		int[] first = density[0];
+		int firstColumns = (columns + 1) >> 1;
+		for (int row = 0; row < rows; row++) {
+			int offset = (row >> 1) * firstColumns;
+			if (packedCells != null) {
+				long[] packed = packedCells[row];
+				for (int word = 0; word < packed.length; word++) {
+					long bits = packed[word];
+					while (bits != 0) {
+						int column = (word << 6) + Long.numberOfTrailingZeros(bits);
+						if (column < columns)
+							first[offset + (column >> 1)]++;
+						bits &= bits - 1;
+					}
+				}
+			} else {
+				boolean[] cellRow = cells[row];
+				for (int column = 0; column < columns; column++) {
+					if (cellRow[column])
+						first[offset + (column >> 1)]++;
 				}
 			}
 		}
+		for (int level = 2; level <= density.length; level++) {
+			int[] below = density[level - 2];
+			int belowRows = (rows + (1 << (level - 1)) - 1) >> (level - 1);
+			int belowColumns = (columns + (1 << (level - 1)) - 1) >> (level - 1);
+			int[] counts = density[level - 1];
+			int levelColumns = (columns + (1 << level) - 1) >> level;
+			for (int row = 0; row < belowRows; row++) {
+				for (int column = 0; column < belowColumns; column++) {
+					counts[(row >> 1) * levelColumns + (column >> 1)] += below[row * belowColumns + column];
+				}
+			}
+		}
+		densityStale = false;
+	}
+
+	/**
+	 * Brings the mipmap up to date with cells that flipped since the last
+	 * update, reading their new state from the current cells.
+	 */
+	private void updateDensity(int[] changedCells, int changedCount) {
+		if (densityStale)
+			return;
+		for (int i = 0; i < changedCount; i++) {
+			int row = changedCells[i] / columns;
+			int column = changedCells[i] - row * columns;
+			int delta = isAlive(row, column) ? 1 : -1;
+			for (int level = 1; level <= density.length; level++) {
+				density[level - 1][(row >> level) * ((columns + (1 << level) - 1) >> level) + (column >> level)] += delta;
+			}
+		}
+	}
+
+	private BufferedImage linesImage() {
+		if (linesImage == null || linesImage.getWidth() != getWidth() || linesImage.getHeight() != getHeight()) {
+			linesImage = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()),
+					BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2 = linesImage.createGraphics();
+			g2.setStroke(LINE_STROKE);
+			drawLines(g2);
+			g2.dispose();
+		}
+		return linesImage;
 	}
 
 	private void drawLines(Graphics g) {
-		width = (double) this.getWidth() / cells[0].length;
-		height = (double) this.getHeight() / cells.length;
+		updateScale();
 		g.setColor(Color.BLACK);
-		for (int column = 0; column < cells[0].length + 1; column++) {
-			g.drawLine((int) Math.round(column * width), 0, (int) Math.round(column * width), this.getHeight());
+		int firstColumn = (int) viewColumn;
+		int lastColumn = Math.min(columns, (int) Math.ceil(viewColumn + getWidth() / width));
+		for (int column = firstColumn; column <= lastColumn; column++) {
+			int x = (int) Math.round((column - viewColumn) * width);
+			g.drawLine(x, 0, x, this.getHeight());
 		}
-		for (int row = 0; row < cells.length + 1; row++) {
-			g.drawLine(0, (int) Math.round(row * height), this.getWidth(), (int) Math.round(row * height));
+		int firstRow = (int) viewRow;
+		int lastRow = Math.min(rows, (int) Math.ceil(viewRow + getHeight() / height));
+		for (int row = firstRow; row <= lastRow; row++) {
+			int y = (int) Math.round((row - viewRow) * height);
+			g.drawLine(0, y, this.getWidth(), y);
 		}
 	}
-	
+
+	/**
+	 * Zooms by the given factor keeping the cell under (x, y) in place.
+	 */
+	private void zoomAt(int x, int y, double factor) {
+		updateScale();
+		double row = viewRow + y / height;
+		double column = viewColumn + x / width;
+		double maxZoom = Math.max(1, MAX_CELL_PIXELS / Math.min((double) getWidth() / columns, (double) getHeight() / rows));
+		zoom = Math.max(1, Math.min(maxZoom, zoom * factor));
+		updateScale();
+		setView(row - y / height, column - x / width);
+	}
+
+	/**
+	 * Moves the top left corner of the panel to the given cell, kept inside the
+	 * board.
+	 */
+	private void setView(double row, double column) {
+		viewRow = Math.max(0, Math.min(rows - rows / zoom, row));
+		viewColumn = Math.max(0, Math.min(columns - columns / zoom, column));
+		linesImage = null;
+		repaint();
+	}
+
+	/**
+	 * Row of the cell under the given y coordinate of the panel.
+	 */
+	public int rowAt(int y) {
+		updateScale();
+		return (int) Math.floor(viewRow + y / height);
+	}
+
+	public int columnAt(int x) {
+		updateScale();
+		return (int) Math.floor(viewColumn + x / width);
+	}
+
+	/**
+	 * Reports the time of every paint to metrics, null to stop.
+	 */
+	public void setMetrics(SimulationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	public void updateGrid(boolean[][] cells) {
 		this.cells = cells;//Store new reference
+		packedCells = null;
+		setBoardSize(cells.length, cells[0].length);
+		densityStale = true;
 		repaint();
 	}
 
-	public void clearCells() {
-		width = (double) this.getWidth() / cells[0].length;
-		height = (double) this.getHeight() / cells.length;
-		for (int row = 0; row < cells.length; row++) {
-			for (int column = 0; column < cells[0].length; column++) {
-				if (cells[row][column] == true) {
-					cells[row][column] = false;
+	/**
+	 * Resets the view when the board changes size.
+	 */
+	private void setBoardSize(int rows, int columns) {
+		if (rows == this.rows && columns == this.columns)
+			return;
+		this.rows = rows;
+		this.columns = columns;
+		zoom = 1;
+		viewRow = 0;
+		viewColumn = 0;
+		linesImage = null;
+		blockRows = (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		blockColumns = (columns + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		dirtyBlocks = null;// allocated by the first update with changed cells
+	}
+
+	/**
+	 * Shows the next generation, repainting only around the given changed
+	 * cells (indices row * columns + column).
+	 */
+	public void updateGrid(boolean[][] cells, int[] changedCells, int changedCount) {
+		this.cells = cells;
+		packedCells = null;
+		updateDensity(changedCells, changedCount);
+		repaintCells(changedCells, changedCount);
+	}
+
+	public void updateGrid(long[][] packedCells, int[] changedCells, int changedCount) {
+		this.packedCells = packedCells;
+		updateDensity(changedCells, changedCount);
+		repaintCells(changedCells, changedCount);
+	}
+
+	private void repaintCells(int[] changedCells, int changedCount) {
+		if (changedCount == 0)
+			return;
+		if (dirtyBlocks == null)
+			dirtyBlocks = new boolean[blockRows * blockColumns];
+		for (int i = 0; i < changedCount; i++) {
+			int row = changedCells[i] / columns;
+			int column = changedCells[i] - row * columns;
+			dirtyBlocks[(row / BLOCK_SIZE) * blockColumns + column / BLOCK_SIZE] = true;
+		}
+		List<int[]> rectangles = dirtyRectangles();
+		Arrays.fill(dirtyBlocks, false);
+		if (rectangles.size() > MAX_DIRTY_RECTANGLES || !isShowing()) {
+			repaint();
+			return;
+		}
+		Rectangle panel = new Rectangle(0, 0, getWidth(), getHeight());
+		for (int[] rectangle : rectangles) {
+			Rectangle bounds = cellBounds(rectangle[0] * BLOCK_SIZE, rectangle[1] * BLOCK_SIZE,
+					Math.min(rows, (rectangle[2] + 1) * BLOCK_SIZE) - 1, Math.min(columns, (rectangle[3] + 1) * BLOCK_SIZE) - 1);
+			if (bounds.intersects(panel))
+				paintImmediately(bounds);
+		}
+	}
+
+	/**
+	 * Merges the dirty blocks into rectangles {firstRow, firstColumn, lastRow,
+	 * lastColumn} in block units: runs of dirty blocks along a block row, and
+	 * identical runs in consecutive block rows.
+	 */
+	private List<int[]> dirtyRectangles() {
+		List<int[]> rectangles = new ArrayList<int[]>();
+		List<int[]> previousRow = new ArrayList<int[]>();
+		for (int blockRow = 0; blockRow < blockRows; blockRow++) {
+			List<int[]> currentRow = new ArrayList<int[]>();
+			int blockColumn = 0;
+			while (blockColumn < blockColumns) {
+				if (!dirtyBlocks[blockRow * blockColumns + blockColumn]) {
+					blockColumn++;
+					continue;
+				}
+				int first = blockColumn;
+				while (blockColumn < blockColumns && dirtyBlocks[blockRow * blockColumns + blockColumn])
+					blockColumn++;
+				int[] rectangle = null;
+				for (int[] above : previousRow) {
+					if (above[1] == first && above[3] == blockColumn - 1)
+						rectangle = above;
+				}
+				if (rectangle == null) {
+					rectangle = new int[] { blockRow, first, blockRow, blockColumn - 1 };
+					rectangles.add(rectangle);
 				}
+				rectangle[2] = blockRow;
+				currentRow.add(rectangle);
 			}
+			previousRow = currentRow;
 		}
+		return rectangles;
+	}
+
+	/**
+	 * Pixel bounds of a range of cells, including the grid lines around them.
+	 */
+	private Rectangle cellBounds(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+		updateScale();
+		int x = (int) Math.floor((firstColumn - viewColumn) * width) - 1;
+		int y = (int) Math.floor((firstRow - viewRow) * height) - 1;
+		return new Rectangle(x, y, (int) Math.ceil((lastColumn + 1 - viewColumn) * width) + 2 - x,
+				(int) Math.ceil((lastRow + 1 - viewRow) * height) + 2 - y);
+	}
+
+	/**
+	 * Paints the packed rows of a BitGeneration, bit c % 64 of word c / 64
+	 * being column c, without unpacking them into a boolean[][] first.
+	 */
+	public void updateGrid(long[][] packedCells) {
+		this.packedCells = packedCells;
+		densityStale = true;
 		repaint();
 	}
 }
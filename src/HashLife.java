@@ -0,0 +1,446 @@
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * HashLife engine for very long runs. The universe is a quadtree of canonical
+ * nodes: two nodes with the same four children are the same object, so a
+ * pattern that repeats in space or time is only stored and computed once.
+ * Every node of level k (a 2^k x 2^k square) memoizes its RESULT, the centre
+ * 2^(k-1) square advanced by the current step size, which lets advance(k)
+ * move the whole universe 2^k generations in one call.
+ *
+ * Unlike Generation this universe is an unbounded plane, not a torus. Cells
+ * are addressed by (row, column) and may go negative.
+ *
+ * Memory is bounded by maxNodes: when the canonical table grows past it the
+ * nodes that are no longer reachable from the root are dropped together with
+ * all memoized results. The check also runs inside the recursion of a long
+ * advance, so every node a pending successor() still holds is pinned on a
+ * stack and kept as well. If what has to be kept is itself more than half of
+ * maxNodes, the limit is doubled rather than collecting over and over.
+ */
+public class HashLife {
+	private static final int DEFAULT_MAX_NODES = 1 << 21;
+	private static final int MAX_LEVEL = 60;
+
+	private static final class Node {
+		final Node nw, ne, sw, se;// null for single cells
+		final int level;
+		final long population;
+		final int id;
+		final int hash;
+		Node next;// chain of the canonical table
+		Node result;
+		int resultStepLog = -1;// step size the result was computed for
+
+		Node(Node nw, Node ne, Node sw, Node se, int level, long population, int id, int hash) {
+			this.nw = nw;
+			this.ne = ne;
+			this.sw = sw;
+			this.se = se;
+			this.level = level;
+			this.population = population;
+			this.id = id;
+			this.hash = hash;
+		}
+	}
+
+	private final Node deadCell = new Node(null, null, null, null, 0, 0, 0, 0);
+	private final Node aliveCell = new Node(null, null, null, null, 0, 1, 1, 1);
+	private int maxNodes;
+	private Node[] pinned = new Node[256];// nodes held by successor() calls in progress
+	private int pinnedCount;
+	private Node[] table = new Node[1 << 16];
+	private int size;
+	private int nextId = 2;
+	private Node[] emptyNodes = new Node[MAX_LEVEL + 1];
+	private Node root;
+	private long originRow;// row of the root's north west corner
+	private long originColumn;
+	private int stepLog;
+	private long generation;
+	private Rule rule = Rule.LIFE;
+	private boolean[] ruleTable = rule.getTable();
+
+	public HashLife() {
+		this(DEFAULT_MAX_NODES);
+	}
+
+	public HashLife(int maxNodes) {
+		this.maxNodes = maxNodes;
+		root = emptyNode(3);
+		originRow = -4;
+		originColumn = -4;
+	}
+
+	/**
+	 * Replaces the universe with the live cells of the given board, cell
+	 * (row, column) of the board becoming cell (row, column) of the plane.
+	 */
+	public void setCells(boolean[][] cells) {
+		int level = 3;
+		while ((1L << level) < Math.max(cells.length, cells[0].length))
+			level++;
+		originRow = 0;
+		originColumn = 0;
+		root = build(cells, level, 0, 0);
+		generation = 0;
+	}
+
+	private Node build(boolean[][] cells, int level, int row, int column) {
+		if (row >= cells.length || column >= cells[0].length)
+			return emptyNode(level);
+		if (level == 0)
+			return cells[row][column] ? aliveCell : deadCell;
+		int half = 1 << (level - 1);
+		return join(build(cells, level - 1, row, column), build(cells, level - 1, row, column + half),
+				build(cells, level - 1, row + half, column), build(cells, level - 1, row + half, column + half));
+	}
+
+	/**
+	 * Advances the universe by 2^log generations.
+	 */
+	public void advance(int log) {
+		if (size > maxNodes)
+			collectGarbage();
+		stepLog = log;
+		// The pattern must sit in the centre quarter of the root, with enough
+		// empty margin that nothing can leave the RESULT square in 2^log steps.
+		while (root.level < log + 3 || centerPopulation(root) != root.population)
+			expand();
+		Node result = successor(root);
+		long quarter = 1L << (root.level - 2);
+		originRow += quarter;
+		originColumn += quarter;
+		root = result;
+		generation += 1L << log;
+	}
+
+	/**
+	 * Advances the universe by any number of generations, one power of two at
+	 * a time.
+	 */
+	public void advanceBy(long generations) {
+		for (int log = 0; generations != 0; log++, generations >>>= 1) {
+			if ((generations & 1) != 0)
+				advance(log);
+		}
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public long getPopulation() {
+		return root.population;
+	}
+
+	/**
+	 * Smallest rectangle holding every live cell as {minRow, minColumn, maxRow,
+	 * maxColumn}, or null when the universe is empty. Each distinct node is
+	 * visited once, so this costs as much as the tree, not as the area.
+	 */
+	public long[] getBoundingBox() {
+		if (root.population == 0)
+			return null;
+		long[] box = boundingBox(root, new IdentityHashMap<Node, long[]>());
+		return new long[] { originRow + box[0], originColumn + box[1], originRow + box[2], originColumn + box[3] };
+	}
+
+	private long[] boundingBox(Node node, IdentityHashMap<Node, long[]> boxes) {
+		if (node.level == 0)
+			return new long[] { 0, 0, 0, 0 };
+		long[] box = boxes.get(node);
+		if (box != null)
+			return box;
+		long half = 1L << (node.level - 1);
+		box = new long[] { Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+		mergeBox(box, node.nw, 0, 0, boxes);
+		mergeBox(box, node.ne, 0, half, boxes);
+		mergeBox(box, node.sw, half, 0, boxes);
+		mergeBox(box, node.se, half, half, boxes);
+		boxes.put(node, box);
+		return box;
+	}
+
+	private void mergeBox(long[] box, Node child, long row, long column, IdentityHashMap<Node, long[]> boxes) {
+		if (child.population == 0)
+			return;
+		long[] childBox = boundingBox(child, boxes);
+		box[0] = Math.min(box[0], row + childBox[0]);
+		box[1] = Math.min(box[1], column + childBox[1]);
+		box[2] = Math.max(box[2], row + childBox[2]);
+		box[3] = Math.max(box[3], column + childBox[3]);
+	}
+
+	/**
+	 * Clears the board and copies the live cells into it, wrapping coordinates
+	 * that fall outside the board around like the file loader does.
+	 */
+	public void copyInto(boolean[][] cells) {
+		for (int row = 0; row < cells.length; row++) {
+			for (int column = 0; column < cells[0].length; column++) {
+				cells[row][column] = false;
+			}
+		}
+		copyInto(cells, root, originRow, originColumn);
+	}
+
+	private void copyInto(boolean[][] cells, Node node, long row, long column) {
+		if (node.population == 0)
+			return;
+		if (node.level == 0) {
+			cells[(int) Math.floorMod(row, (long) cells.length)][(int) Math.floorMod(column,
+					(long) cells[0].length)] = true;
+			return;
+		}
+		long half = 1L << (node.level - 1);
+		copyInto(cells, node.nw, row, column);
+		copyInto(cells, node.ne, row, column + half);
+		copyInto(cells, node.sw, row + half, column);
+		copyInto(cells, node.se, row + half, column + half);
+	}
+
+	/**
+	 * Doubles the root around its centre.
+	 */
+	private void expand() {
+		if (root.level >= MAX_LEVEL)
+			throw new IllegalStateException("Pattern has grown beyond the HashLife universe");
+		Node border = emptyNode(root.level - 1);
+		Node nw = join(border, border, border, root.nw);
+		Node ne = join(border, border, root.ne, border);
+		Node sw = join(border, root.sw, border, border);
+		Node se = join(root.se, border, border, border);
+		long half = 1L << (root.level - 1);
+		originRow -= half;
+		originColumn -= half;
+		root = join(nw, ne, sw, se);
+	}
+
+	private long centerPopulation(Node node) {
+		return node.nw.se.se.population + node.ne.sw.sw.population + node.sw.ne.ne.population
+				+ node.se.nw.nw.population;
+	}
+
+	private Node center(Node node) {
+		return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+	}
+
+	/**
+	 * RESULT of a node of level k: its centre 2^(k-1) square advanced by
+	 * 2^min(stepLog, k-2) generations. Every node made on the way is pinned
+	 * until the result is known, so the table can be collected in between.
+	 */
+	private Node successor(Node node) {
+		if (node.population == 0)
+			return emptyNode(node.level - 1);
+		// Nodes too small for the step size always advance 2^(k-2) generations
+		int effectiveStepLog = Math.min(stepLog, node.level - 2);
+		if (node.result != null && node.resultStepLog == effectiveStepLog)
+			return node.result;
+		int mark = pinnedCount;
+		pin(node);
+		if (size > maxNodes)
+			collectGarbage();
+		Node result;
+		if (node.level == 2) {
+			result = oneGeneration(node);
+		} else {
+			Node n00 = node.nw;
+			Node n01 = pin(join(node.nw.ne, node.ne.nw, node.nw.se, node.ne.sw));
+			Node n02 = node.ne;
+			Node n10 = pin(join(node.nw.sw, node.nw.se, node.sw.nw, node.sw.ne));
+			Node n11 = pin(join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw));
+			Node n12 = pin(join(node.ne.sw, node.ne.se, node.se.nw, node.se.ne));
+			Node n20 = node.sw;
+			Node n21 = pin(join(node.sw.ne, node.se.nw, node.sw.se, node.se.sw));
+			Node n22 = node.se;
+			if (stepLog >= node.level - 2) {
+				// Full speed, both halves of the time step are RESULTs
+				n00 = pin(successor(n00));
+				n01 = pin(successor(n01));
+				n02 = pin(successor(n02));
+				n10 = pin(successor(n10));
+				n11 = pin(successor(n11));
+				n12 = pin(successor(n12));
+				n20 = pin(successor(n20));
+				n21 = pin(successor(n21));
+				n22 = pin(successor(n22));
+			} else {
+				// Smaller step, the first half only re-centres
+				n00 = pin(center(n00));
+				n01 = pin(center(n01));
+				n02 = pin(center(n02));
+				n10 = pin(center(n10));
+				n11 = pin(center(n11));
+				n12 = pin(center(n12));
+				n20 = pin(center(n20));
+				n21 = pin(center(n21));
+				n22 = pin(center(n22));
+			}
+			Node nw = pin(successor(join(n00, n01, n10, n11)));
+			Node ne = pin(successor(join(n01, n02, n11, n12)));
+			Node sw = pin(successor(join(n10, n11, n20, n21)));
+			Node se = successor(join(n11, n12, n21, n22));
+			result = join(nw, ne, sw, se);
+		}
+		pinnedCount = mark;
+		node.result = result;
+		node.resultStepLog = effectiveStepLog;
+		return result;
+	}
+
+	private Node pin(Node node) {
+		if (pinnedCount == pinned.length)
+			pinned = Arrays.copyOf(pinned, pinned.length * 2);
+		pinned[pinnedCount++] = node;
+		return node;
+	}
+
+	/**
+	 * Centre 2x2 of a 4x4 node after one generation of the rule.
+	 */
+	private Node oneGeneration(Node node) {
+		int bits = 0;// bit (4 * row + column) of the 4x4 square
+		Node[] quadrants = { node.nw, node.ne, node.sw, node.se };
+		for (int quadrant = 0; quadrant < 4; quadrant++) {
+			Node q = quadrants[quadrant];
+			int shift = (quadrant >> 1) * 8 + (quadrant & 1) * 2;
+			bits |= (int) q.nw.population << shift;
+			bits |= (int) q.ne.population << (shift + 1);
+			bits |= (int) q.sw.population << (shift + 4);
+			bits |= (int) q.se.population << (shift + 5);
+		}
+		return join(nextCell(bits, 1, 1), nextCell(bits, 1, 2), nextCell(bits, 2, 1), nextCell(bits, 2, 2));
+	}
+
+	private Node nextCell(int bits, int row, int column) {
+		int neighbourhood = 0;// 3x3 row-major, the cell itself in bit 4
+		for (int r = row - 1; r <= row + 1; r++) {
+			neighbourhood |= (bits >>> (4 * r + column - 1) & 7) << (3 * (r - row + 1));
+		}
+		return ruleTable[neighbourhood] ? aliveCell : deadCell;
+	}
+
+	public Rule getRule() {
+		return rule;
+	}
+
+	/**
+	 * Switches rule, forgetting every memoized result. Rules with B0 are
+	 * rejected with an IllegalArgumentException: they would fill the unbounded
+	 * plane in one generation.
+	 */
+	public void setRule(Rule rule) {
+		if (rule.isBirthOnZero())
+			throw new IllegalArgumentException(rule + " gives birth on empty space, HashLife cannot run it");
+		if (rule.equals(this.rule))
+			return;
+		this.rule = rule;
+		ruleTable = rule.getTable();
+		for (Node chain : table) {
+			for (Node node = chain; node != null; node = node.next) {
+				node.result = null;
+				node.resultStepLog = -1;
+			}
+		}
+	}
+
+	private Node emptyNode(int level) {
+		if (level == 0)
+			return deadCell;
+		if (emptyNodes[level] == null) {
+			Node child = emptyNode(level - 1);
+			emptyNodes[level] = join(child, child, child, child);
+		}
+		return emptyNodes[level];
+	}
+
+	/**
+	 * The canonical node with the given children.
+	 */
+	private Node join(Node nw, Node ne, Node sw, Node se) {
+		int hash = hash(nw, ne, sw, se);
+		int index = hash & (table.length - 1);
+		for (Node node = table[index]; node != null; node = node.next) {
+			if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se)
+				return node;
+		}
+		Node node = new Node(nw, ne, sw, se, nw.level + 1,
+				nw.population + ne.population + sw.population + se.population, nextId++, hash);
+		insert(node);
+		if (size > table.length - (table.length >>> 2))
+			resize(table.length << 1);
+		return node;
+	}
+
+	private static int hash(Node nw, Node ne, Node sw, Node se) {
+		int hash = nw.id;
+		hash = hash * 0x9E3779B1 + ne.id;
+		hash = hash * 0x9E3779B1 + sw.id;
+		hash = hash * 0x9E3779B1 + se.id;
+		return hash ^ (hash >>> 16);
+	}
+
+	private void insert(Node node) {
+		int index = node.hash & (table.length - 1);
+		node.next = table[index];
+		table[index] = node;
+		size++;
+	}
+
+	private void resize(int capacity) {
+		Node[] old = table;
+		table = new Node[capacity];
+		size = 0;
+		for (Node chain : old) {
+			while (chain != null) {
+				Node next = chain.next;
+				insert(chain);
+				chain = next;
+			}
+		}
+	}
+
+	/**
+	 * Keeps only the nodes reachable from the root and the pinned nodes.
+	 * Memoized results may point at dropped nodes, so they are all forgotten.
+	 */
+	private void collectGarbage() {
+		Node[] old = table;
+		table = new Node[old.length];
+		size = 0;
+		for (Node chain : old) {
+			for (Node node = chain; node != null; node = node.next) {
+				node.result = null;
+			}
+		}
+		emptyNodes = new Node[MAX_LEVEL + 1];
+		keep(root);
+		for (int i = 0; i < pinnedCount; i++) {
+			keep(pinned[i]);
+		}
+		if (size > maxNodes >>> 1)
+			maxNodes = Math.max(maxNodes, size) << 1;
+		int capacity = table.length;
+		while (size < capacity >>> 3 && capacity > 1 << 16)
+			capacity >>>= 1;
+		if (capacity != table.length)
+			resize(capacity);
+	}
+
+	private void keep(Node node) {
+		if (node.level == 0)
+			return;
+		for (Node kept = table[node.hash & (table.length - 1)]; kept != null; kept = kept.next) {
+			if (kept == node)
+				return;
+		}
+		keep(node.nw);
+		keep(node.ne);
+		keep(node.sw);
+		keep(node.se);
+		insert(node);
+	}
+}
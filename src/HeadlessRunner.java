@@ -0,0 +1,288 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line entry point that runs pattern files without any Swing: every
+ * file is loaded the same way the Open File button does, stepped for a fixed
+ * number of generations as fast as the engine goes, and reported on one line.
+ *
+ * <pre>
+ * java HeadlessRunner [-engine classic|bit|frontier|sparse|block|vector|distributed|offheap|mapped]
+ *                     [-generations N] [-rows R] [-columns C] [-threads T] [-rule B3/S23] [-verify]
+ *                     [-save DIR] [-snapshot DIR] [-universe DIR] file...
+ * </pre>
+ *
+ * Every file runs under the rule it names, B3/S23 if it names none, unless
+ * -rule overrides it for all of them.
+ *
+ * Throughput counts every cell of the rows x columns board once per
+ * generation, whatever the engine actually visits, so engines are compared on
+ * the same work. With -verify every generation is also compared with Generation, the
+ * reference engine, and the run stops at the first difference. With -save the
+ * last generation of every file is written to DIR as RLE, with -snapshot as a
+ * Snapshot. Snapshot files are run on a board of their own size and carry on
+ * from their generation. The distributed engine is laid out by -Dlife.tiles
+ * and -Dlife.halo, see DistributedUniverse, and without -verify is handed all
+ * the generations at once. Without -verify the offheap and
+ * mapped engines are loaded straight from the file, so a board of any size
+ * runs in a small heap; direct memory is capped at -Xmx unless
+ * -XX:MaxDirectMemorySize says otherwise. With -verify the board is also
+ * copied out for the reference engine.
+ *
+ * The mapped engine keeps the board in a MappedUniverse, created in DIR with
+ * -universe and left there at the last generation, in temporary files
+ * otherwise. A universe file given to the mapped engine is stepped in place
+ * and carries on from its generation; given to any other engine it is read
+ * like a snapshot.
+ */
+public class HeadlessRunner {
+	private EngineType engineType = EngineType.BIT;
+	private int generations = 1000;
+	private int rows = Simulation.ROWS;
+	private int columns = Simulation.COLUMNS;
+	private int threads = 1;
+	private Rule rule;// null to use the rule of each file
+	private boolean verify;
+	private File saveDirectory;
+	private File snapshotDirectory;
+	private File universeDirectory;// null for temporary universes
+	private List<File> files = new ArrayList<File>();
+
+	public static void main(String[] args) {
+		HeadlessRunner runner = new HeadlessRunner();
+		try {
+			runner.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java HeadlessRunner [-engine " + Arrays.toString(EngineType.values())
+					+ "] [-generations N] [-rows R] [-columns C] [-threads T] [-rule B3/S23] [-verify] [-save DIR] [-snapshot DIR] [-universe DIR] file...");
+			System.exit(2);
+		}
+		System.exit(runner.run() ? 0 : 1);
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-engine":
+				engineType = EngineType.valueOf(value(args, ++i).toUpperCase());
+				break;
+			case "-generations":
+				generations = Integer.parseInt(value(args, ++i));
+				break;
+			case "-rows":
+				rows = Integer.parseInt(value(args, ++i));
+				break;
+			case "-columns":
+				columns = Integer.parseInt(value(args, ++i));
+				break;
+			case "-threads":
+				threads = Integer.parseInt(value(args, ++i));
+				break;
+			case "-rule":
+				rule = Rule.parse(value(args, ++i));
+				break;
+			case "-verify":
+				verify = true;
+				break;
+			case "-save":
+				saveDirectory = new File(value(args, ++i));
+				break;
+			case "-snapshot":
+				snapshotDirectory = new File(value(args, ++i));
+				break;
+			case "-universe":
+				universeDirectory = new File(value(args, ++i));
+				break;
+			default:
+				if (args[i].startsWith("-"))
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				files.add(new File(args[i]));
+			}
+		}
+		if (files.isEmpty())
+			throw new IllegalArgumentException("No pattern files given");
+		if (verify && engineType == EngineType.SPARSE)
+			throw new IllegalArgumentException("-verify compares against the torus and cannot check the sparse plane");
+		if (engineType == EngineType.VECTOR && !VectorGeneration.isVectorized())
+			System.err.println("VectorKernel or jdk.incubator.vector not available, running the scalar kernel");
+	}
+
+	private static String value(String[] args, int i) {
+		if (i >= args.length)
+			throw new IllegalArgumentException(args[i - 1] + " needs a value");
+		return args[i];
+	}
+
+	/**
+	 * Runs every file, returns false if a file could not be read or failed
+	 * verification.
+	 */
+	private boolean run() {
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		boolean success = true;
+		System.out.printf("%-32s %-11s %12s %12s %16s %12s%n", "pattern", "engine", "generations", "elapsed ms",
+				"cell-updates/s", "population");
+		for (File file : files) {
+			boolean[][] cells = null;// null when the file goes straight into an off-heap or mapped engine
+			GenerationEngine engine = null;
+			int fileRows = rows;
+			int fileColumns = columns;
+			Rule fileRule;
+			long firstGeneration = 1;
+			try {
+				if (MappedUniverse.isUniverse(file)) {
+					MappedUniverse universe = MappedUniverse.open(file, pool);
+					fileRows = universe.getRows();
+					fileColumns = universe.getColumns();
+					fileRule = rule != null ? rule : universe.getRule();
+					firstGeneration = universe.getGeneration();
+					if (engineType == EngineType.MAPPED) {
+						engine = universe;
+					} else {
+						cells = copy(universe.getCurrentGeneration());
+						universe.close();
+					}
+				} else if (Snapshot.isSnapshot(file)) {
+					Snapshot snapshot = Snapshot.read(file);
+					fileRows = snapshot.getRows();
+					fileColumns = snapshot.getColumns();
+					engine = loadedEngine(file, fileRows, fileColumns, pool);
+					if (engine != null) {
+						snapshot.copyInto(engine);
+						if (engine instanceof MappedUniverse)
+							((MappedUniverse) engine).setGeneration(snapshot.getGeneration());
+					} else {
+						snapshot.copyInto(sinkFor(cells = new boolean[fileRows][fileColumns]));
+					}
+					fileRule = rule != null ? rule : snapshot.getRule();
+					firstGeneration = snapshot.getGeneration();
+				} else {
+					engine = loadedEngine(file, rows, columns, pool);
+					CellSink sink = engine != null ? engine : sinkFor(cells = new boolean[rows][columns]);
+					PatternInfo info = PatternLoader.load(file, sink, rows, columns, Simulation.ORIGIN_ROW % rows,
+							Simulation.ORIGIN_COLUMN % columns);
+					fileRule = rule != null ? rule : info.getRule() != null ? Rule.parse(info.getRule()) : Rule.LIFE;
+				}
+			} catch (IOException | IllegalArgumentException | UncheckedIOException e) {
+				System.err.println("Couldn't read " + file + ": " + e.getMessage());
+				if (engine != null)
+					engine.close();
+				success = false;
+				continue;
+			}
+			GenerationEngine reference = null;
+			try {
+				if (engine == null)
+					engine = engineType.create(cells, pool, fileRule);
+				else
+					engine.setRule(fileRule);
+				if (verify && cells == null)
+					cells = copy(engine.getCurrentGeneration());
+				if (verify) {
+					reference = new Generation(copy(cells));
+					reference.setRule(fileRule);
+				}
+			} catch (IllegalArgumentException | UncheckedIOException e) {
+				System.err.println(file + ": " + e.getMessage());
+				if (engine != null)
+					engine.close();
+				success = false;
+				continue;
+			}
+			long elapsed = 0;
+			int completed = 0;
+			if (reference == null && engine instanceof DistributedUniverse) {
+				// Nothing to check in between, so the workers get the whole run in one round trip
+				long start = System.nanoTime();
+				((DistributedUniverse) engine).step(generations);
+				elapsed = System.nanoTime() - start;
+				completed = generations;
+			}
+			for (int generation = completed + 1; generation <= generations; generation++) {
+				long start = System.nanoTime();
+				engine.step();
+				elapsed += System.nanoTime() - start;
+				completed = generation;
+				if (reference != null && !matches(engine, reference.getNextGeneration())) {
+					System.err.println(file + ": " + engineType + " differs from Generation at generation " + generation);
+					success = false;
+					break;
+				}
+			}
+			double cellUpdates = (double) fileRows * fileColumns * completed;
+			System.out.printf("%-32s %-11s %12d %12.1f %16.4g %12d%n", file.getName(), engineType, completed,
+					elapsed / 1e6, cellUpdates / (elapsed / 1e9), engine.getPopulation());
+			if (saveDirectory != null) {
+				File output = new File(saveDirectory, file.getName().replaceFirst("\\.[^.]*$", "") + ".rle");
+				try {
+					PatternLoader.save(output, engine, fileRows, fileColumns, fileRule.toString());
+				} catch (IOException e) {
+					System.err.println("Couldn't write " + output + ": " + e.getMessage());
+					success = false;
+				}
+			}
+			if (snapshotDirectory != null) {
+				File output = new File(snapshotDirectory,
+						file.getName().replaceFirst("\\.[^.]*$", "") + Snapshot.EXTENSION);
+				try {
+					Snapshot.capture(engine, fileRows, fileColumns, firstGeneration + completed).write(output);
+				} catch (IOException e) {
+					System.err.println("Couldn't write " + output + ": " + e.getMessage());
+					success = false;
+				}
+			}
+			engine.close();
+		}
+		if (pool != null)
+			pool.shutdown();
+		return success;
+	}
+
+	/**
+	 * The engine a file is loaded straight into, bypassing the boolean[][],
+	 * or null if it goes through one.
+	 */
+	private GenerationEngine loadedEngine(File file, int rows, int columns, ForkJoinPool pool) throws IOException {
+		if (engineType == EngineType.OFFHEAP)
+			return new OffHeapGeneration(rows, columns, pool);
+		if (engineType == EngineType.MAPPED && universeDirectory != null)
+			return MappedUniverse.create(new File(universeDirectory,
+					file.getName().replaceFirst("\\.[^.]*$", "") + MappedUniverse.EXTENSION), rows, columns, pool);
+		if (engineType == EngineType.MAPPED)
+			return MappedUniverse.create(rows, columns, pool);
+		return null;
+	}
+
+	private static boolean matches(GenerationEngine engine, boolean[][] expected) {
+		for (int row = 0; row < expected.length; row++) {
+			for (int column = 0; column < expected[0].length; column++) {
+				if (engine.isAlive(row, column) != expected[row][column])
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static CellSink sinkFor(boolean[][] cells) {
+		return new CellSink() {
+			@Override
+			public void setAlive(int row, int column, boolean alive) {
+				cells[row][column] = alive;
+			}
+		};
+	}
+
+	private static boolean[][] copy(boolean[][] cells) {
+		boolean[][] copy = new boolean[cells.length][];
+		for (int row = 0; row < cells.length; row++) {
+			copy[row] = cells[row].clone();
+		}
+		return copy;
+	}
+}
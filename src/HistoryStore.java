@@ -0,0 +1,243 @@
+import java.util.Arrays;
+
+/**
+ * Recent generations of a run, kept so that the simulation can step backward
+ * and scrub. Every keyframeInterval generations the whole board is stored as
+ * bit-packed rows; the generations in between only store the cells that
+ * flipped, as the engines report them. Any retained generation is rebuilt
+ * from the keyframe before it plus at most keyframeInterval - 1 deltas.
+ *
+ * Generations live in a ring that is trimmed from the oldest end, a keyframe
+ * and its deltas at a time, whenever the stored bytes exceed byteBudget. The
+ * newest keyframe group is always kept.
+ *
+ * Recording a generation drops every later one, so stepping forward after a
+ * seek starts a new future. Methods are synchronized; getOldestGeneration()
+ * and getNewestGeneration() do not lock and can be polled from the Event
+ * Dispatch Thread.
+ */
+public class HistoryStore {
+	private static final int ENTRY_OVERHEAD = 32;// bytes counted per generation besides its cells
+
+	private final int rows;
+	private final int columns;
+	private final int keyframeInterval;
+	private final long byteBudget;
+	private Entry[] ring = new Entry[64];
+	private int head;// index of the oldest entry
+	private int size;
+	private long bytes;
+	private int lastKeyframe;// generation of the newest keyframe
+	private volatile int oldestGeneration;
+	private volatile int newestGeneration = -1;// below oldestGeneration while empty
+
+	/**
+	 * One generation: either the whole board or the cells flipped since the
+	 * generation before.
+	 */
+	private static final class Entry {
+		final int generation;
+		final long[][] keyframe;// null for a delta
+		int[] flipped;
+		int flippedCount;
+		long bytes;
+
+		Entry(int generation, long[][] keyframe, int[] flipped, int flippedCount, long bytes) {
+			this.generation = generation;
+			this.keyframe = keyframe;
+			this.flipped = flipped;
+			this.flippedCount = flippedCount;
+			this.bytes = bytes;
+		}
+	}
+
+	public HistoryStore(int rows, int columns, int keyframeInterval, long byteBudget) {
+		this.rows = rows;
+		this.columns = columns;
+		this.keyframeInterval = keyframeInterval;
+		this.byteBudget = byteBudget;
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(ring, null);
+		head = 0;
+		size = 0;
+		bytes = 0;
+		updateBounds();
+	}
+
+	/**
+	 * Stores the engine's whole board as the given generation, dropping it and
+	 * every later generation first.
+	 */
+	public synchronized void keyframe(int generation, GenerationEngine engine) {
+		truncateFrom(generation);
+		append(newKeyframe(generation, engine));
+	}
+
+	/**
+	 * Stores the generation the engine was just stepped to, from the cells
+	 * the step flipped. Falls back to a keyframe when one is due, when the
+	 * generation does not follow the newest one stored, when the delta would
+	 * be larger than the board or when changed is null.
+	 */
+	public synchronized void record(int generation, GenerationEngine engine, int[] changed, int count) {
+		truncateFrom(generation);
+		Entry newest = size == 0 ? null : ring[(head + size - 1) % ring.length];
+		if (newest == null || newest.generation != generation - 1 || generation - lastKeyframe >= keyframeInterval
+				|| changed == null || (long) count * 4 > keyframeBytes())
+			append(newKeyframe(generation, engine));
+		else
+			append(new Entry(generation, null, Arrays.copyOf(changed, count), count, ENTRY_OVERHEAD + count * 4L));
+	}
+
+	/**
+	 * Records an edit of one cell of the given generation, which must be the
+	 * newest one stored; later generations are dropped.
+	 */
+	public synchronized void flip(int generation, int cell) {
+		truncateFrom(generation + 1);
+		if (size == 0)
+			return;
+		Entry newest = ring[(head + size - 1) % ring.length];
+		if (newest.generation != generation)
+			return;
+		if (newest.keyframe != null) {
+			newest.keyframe[cell / columns][(cell % columns) >>> 6] ^= 1L << (cell % columns);
+			return;
+		}
+		if (newest.flippedCount == newest.flipped.length)
+			newest.flipped = Arrays.copyOf(newest.flipped, Math.max(4, newest.flippedCount * 2));
+		newest.flipped[newest.flippedCount++] = cell;
+		newest.bytes += 4;
+		bytes += 4;
+		trim();
+	}
+
+	/**
+	 * Rebuilds a retained generation into cells, returns false, leaving cells
+	 * alone, if it is not retained. Generations skipped by a jump never are.
+	 */
+	public synchronized boolean seek(int generation, boolean[][] cells) {
+		if (generation < oldestGeneration || generation > newestGeneration)
+			return false;
+		int index = size - 1;
+		while (ring[(head + index) % ring.length].generation > generation)
+			index--;
+		if (ring[(head + index) % ring.length].generation != generation)
+			return false;
+		while (ring[(head + index) % ring.length].keyframe == null)
+			index--;
+		long[][] keyframe = ring[(head + index) % ring.length].keyframe;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				cells[row][column] = (keyframe[row][column >>> 6] & (1L << column)) != 0;
+			}
+		}
+		for (index++; index < size; index++) {
+			Entry entry = ring[(head + index) % ring.length];
+			if (entry.generation > generation)
+				break;
+			for (int i = 0; i < entry.flippedCount; i++) {
+				int cell = entry.flipped[i];
+				cells[cell / columns][cell % columns] ^= true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The oldest generation seek() can rebuild, greater than
+	 * getNewestGeneration() when nothing is stored.
+	 */
+	public int getOldestGeneration() {
+		return oldestGeneration;
+	}
+
+	public int getNewestGeneration() {
+		return newestGeneration;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	private long keyframeBytes() {
+		return (long) rows * (((columns + 63) >>> 6) * 8 + 16);
+	}
+
+	private Entry newKeyframe(int generation, GenerationEngine engine) {
+		lastKeyframe = generation;
+		return new Entry(generation, Snapshot.pack(engine, rows, columns), null, 0, ENTRY_OVERHEAD + keyframeBytes());
+	}
+
+	private void append(Entry entry) {
+		if (size == ring.length) {
+			Entry[] grown = new Entry[ring.length * 2];
+			for (int i = 0; i < size; i++) {
+				grown[i] = ring[(head + i) % ring.length];
+			}
+			ring = grown;
+			head = 0;
+		}
+		ring[(head + size) % ring.length] = entry;
+		size++;
+		bytes += entry.bytes;
+		trim();
+	}
+
+	/**
+	 * Drops the oldest keyframe groups while over budget, keeping the newest.
+	 */
+	private void trim() {
+		while (bytes > byteBudget) {
+			int group = 1;// the oldest keyframe and the deltas that follow it
+			while (group < size && ring[(head + group) % ring.length].keyframe == null)
+				group++;
+			if (group == size)
+				break;
+			for (int i = 0; i < group; i++) {
+				bytes -= ring[head].bytes;
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+			}
+			size -= group;
+		}
+		updateBounds();
+	}
+
+	/**
+	 * Drops the given generation and every later one.
+	 */
+	private void truncateFrom(int generation) {
+		int oldSize = size;
+		while (size > 0) {
+			int index = (head + size - 1) % ring.length;
+			if (ring[index].generation < generation)
+				break;
+			bytes -= ring[index].bytes;
+			ring[index] = null;
+			size--;
+		}
+		if (size == oldSize)
+			return;
+		for (int i = size - 1; i >= 0; i--) {
+			Entry entry = ring[(head + i) % ring.length];
+			if (entry.keyframe != null) {
+				lastKeyframe = entry.generation;
+				break;
+			}
+		}
+		updateBounds();
+	}
+
+	private void updateBounds() {
+		if (size == 0) {
+			oldestGeneration = 0;
+			newestGeneration = -1;
+		} else {
+			oldestGeneration = ring[head].generation;
+			newestGeneration = ring[(head + size - 1) % ring.length].generation;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Buckets are log-linear:
+ * every power of two is split into SUB_BUCKETS equal buckets, so a percentile
+ * is reported to within about 6% of the true value whatever its magnitude.
+ * record() is a single atomic increment and never allocates, so it can be
+ * called on every generation; any thread may read percentiles meanwhile,
+ * they see the counts as of some moment during the read.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 44;// about 4.9 hours, longer durations share the last bucket
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 1) * SUB_BUCKETS);
+	private final AtomicLongArray totals = new AtomicLongArray(3);// count, sum and max of nanos
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		counts.incrementAndGet(bucket(nanos));
+		totals.incrementAndGet(0);
+		totals.addAndGet(1, nanos);
+		long max;
+		while (nanos > (max = totals.get(2)) && !totals.compareAndSet(2, max, nanos))
+			;
+	}
+
+	/**
+	 * Bucket of a duration: values below SUB_BUCKETS have one each, above
+	 * that the exponent picks a power of two and the next SUB_BUCKET_BITS
+	 * bits below the leading one pick a bucket within it.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT)
+			return (MAX_EXPONENT + 1) * SUB_BUCKETS - 1;
+		int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Largest duration that falls in the bucket.
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * Duration that the given fraction of the recorded ones (0.99 for the
+	 * p99) did not exceed, 0 when nothing was recorded.
+	 */
+	public long getPercentile(double fraction) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			total += counts.get(i);
+		}
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBound(i), totals.get(2));
+		}
+		return totals.get(2);
+	}
+
+	public long getCount() {
+		return totals.get(0);
+	}
+
+	public long getMean() {
+		long count = totals.get(0);
+		return count == 0 ? 0 : totals.get(1) / count;
+	}
+
+	public long getMax() {
+		return totals.get(2);
+	}
+
+	/**
+	 * Forgets every recorded duration. Durations recorded while resetting may
+	 * be partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		totals.set(0, 0);
+		totals.set(1, 0);
+		totals.set(2, 0);
+	}
+}
@@ -0,0 +1,283 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * OffHeapGeneration over two files mapped into memory instead of two boards
+ * in it, for worlds larger than RAM. The universe file holds one generation
+ * and a swap file next to it, named after it with SWAP_SUFFIX, the other:
+ * every step reads the one and writes the other, in row order, so the page
+ * cache brings in the rows being stepped and writes back and evicts those
+ * already stepped as memory runs short, and the two files trade places.
+ *
+ * Each file starts with a header page, MAGIC, VERSION, the rows, columns and
+ * generation and the rulestring, followed by the bit-packed rows laid out
+ * like OffHeapBoard. The file with the later generation is the current one,
+ * so the pair is also a checkpoint: open() maps it again and carries on
+ * without reading or parsing any of the board, whatever its size. What is on
+ * the disk is consistent once checkpoint() or close() returns and until the
+ * next step; after a crash while stepping, the newest generation may be
+ * half written.
+ */
+public class MappedUniverse extends OffHeapGeneration {
+	public static final String EXTENSION = ".universe";
+	public static final String SWAP_SUFFIX = ".swap";
+	private static final int MAGIC = 0x4C494655;// "LIFU"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4096;// a page, so the rows start page aligned
+
+	private final File[] files;// the universe file and its swap file
+	private final FileChannel[] channels;
+	private final MappedByteBuffer[] headers;
+	private final boolean temporary;// both files are deleted by close()
+	private int current;// index of the file holding the current generation
+	private long generation;
+
+	private MappedUniverse(File[] files, FileChannel[] channels, MappedByteBuffer[] headers, OffHeapBoard[] boards,
+			int current, long generation, ForkJoinPool pool, boolean temporary) {
+		super(boards[current], boards[1 - current], pool);
+		this.files = files;
+		this.channels = channels;
+		this.headers = headers;
+		this.current = current;
+		this.generation = generation;
+		this.temporary = temporary;
+	}
+
+	/**
+	 * A new empty rows x columns universe at generation 1, replacing whatever
+	 * the file and its swap file held.
+	 */
+	public static MappedUniverse create(File file, int rows, int columns, ForkJoinPool pool) throws IOException {
+		return map(file, true, rows, columns, pool, false);
+	}
+
+	/**
+	 * A new empty universe in temporary files, deleted again by close() or
+	 * at the latest when the JVM exits. Throws UncheckedIOException if they
+	 * cannot be created.
+	 */
+	public static MappedUniverse create(int rows, int columns, ForkJoinPool pool) {
+		try {
+			File file = File.createTempFile("life", EXTENSION);
+			file.deleteOnExit();
+			new File(file.getPath() + SWAP_SUFFIX).deleteOnExit();
+			return map(file, true, rows, columns, pool, true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * A universe of the given cells in temporary files.
+	 */
+	public static MappedUniverse create(boolean[][] cells, ForkJoinPool pool) {
+		MappedUniverse universe = create(cells.length, cells[0].length, pool);
+		universe.setCurrentGeneration(cells);
+		return universe;
+	}
+
+	/**
+	 * Reopens a universe at the generation and rule it was left at.
+	 */
+	public static MappedUniverse open(File file, ForkJoinPool pool) throws IOException {
+		return map(file, false, 0, 0, pool, false);
+	}
+
+	/**
+	 * Whether the file starts with the universe magic number.
+	 */
+	public static boolean isUniverse(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0)
+				;
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Opens and maps both files. When opening, the size and the current file
+	 * come from the headers; a swap file that is missing or does not fit is
+	 * started afresh. The other file is always marked a generation older.
+	 */
+	private static MappedUniverse map(File file, boolean creating, int rows, int columns, ForkJoinPool pool,
+			boolean temporary) throws IOException {
+		File[] files = { file, new File(file.getPath() + SWAP_SUFFIX) };
+		FileChannel[] channels = new FileChannel[2];
+		MappedByteBuffer[] headers = new MappedByteBuffer[2];
+		OffHeapBoard[] boards = new OffHeapBoard[2];
+		try {
+			int current = 0;
+			long generation = 1;
+			Rule rule = Rule.LIFE;
+			if (creating) {
+				for (int i = 0; i < 2; i++) {
+					channels[i] = FileChannel.open(files[i].toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+							StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+				}
+			} else {
+				channels[0] = FileChannel.open(files[0].toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				ByteBuffer header = readHeader(channels[0]);
+				if (header == null)
+					throw new IOException(file + " is not a universe");
+				rows = header.getInt();
+				columns = header.getInt();
+				generation = header.getLong();
+				if (rows <= 0 || columns <= 0)
+					throw new IOException(file + ": corrupt universe header");
+				rule = readRule(header, file);
+				channels[1] = FileChannel.open(files[1].toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE);
+				ByteBuffer swapHeader = readHeader(channels[1]);
+				if (swapHeader != null && swapHeader.getInt() == rows && swapHeader.getInt() == columns) {
+					long swapGeneration = swapHeader.getLong();
+					if (swapGeneration > generation) {
+						current = 1;
+						generation = swapGeneration;
+						rule = readRule(swapHeader, files[1]);
+					}
+				}
+				long length = HEADER_BYTES + (long) rows * ((columns + 63) >>> 6) * 8;
+				if (channels[current].size() < length)
+					throw new IOException(files[current] + ": universe cut short");
+			}
+			for (int i = 0; i < 2; i++) {
+				headers[i] = channels[i].map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+				boards[i] = OffHeapBoard.map(channels[i], HEADER_BYTES, rows, columns);
+			}
+			MappedUniverse universe = new MappedUniverse(files, channels, headers, boards, current, generation, pool,
+					temporary);
+			universe.writeHeader(1 - current, generation - 1);
+			universe.setRule(rule);
+			return universe;
+		} catch (IOException | RuntimeException e) {
+			for (int i = 0; i < 2; i++) {
+				if (boards[i] != null)
+					boards[i].close();
+				if (headers[i] != null)
+					OffHeapBoard.free(headers[i]);
+				if (channels[i] != null)
+					channels[i].close();
+			}
+			if (temporary) {
+				files[0].delete();
+				files[1].delete();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * The header of the file, positioned after the version, or null if it is
+	 * not the header of a universe.
+	 */
+	private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+			;
+		header.flip();
+		if (header.remaining() < 26 || header.getInt() != MAGIC || header.getInt() != VERSION)
+			return null;
+		return header;
+	}
+
+	private static Rule readRule(ByteBuffer header, File file) throws IOException {
+		int ruleLength = header.getShort();
+		if (ruleLength < 0 || ruleLength > header.remaining())
+			throw new IOException(file + ": corrupt universe header");
+		byte[] ruleBytes = new byte[ruleLength];
+		header.get(ruleBytes);
+		try {
+			return Rule.parse(new String(ruleBytes, StandardCharsets.US_ASCII));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the header of file 0 or 1, which holds the given generation.
+	 */
+	private void writeHeader(int file, long generation) {
+		ByteBuffer header = headers[file];
+		byte[] ruleBytes = getRule().toString().getBytes(StandardCharsets.US_ASCII);
+		header.clear();
+		header.putInt(MAGIC).putInt(VERSION).putInt(getRows()).putInt(getColumns()).putLong(generation);
+		header.putShort((short) ruleBytes.length).put(ruleBytes);
+	}
+
+	/**
+	 * Steps into the other file, whose header then names the new generation.
+	 */
+	@Override
+	public void step() {
+		super.step();
+		current = 1 - current;
+		generation++;
+		writeHeader(current, generation);
+	}
+
+	@Override
+	public void setRule(Rule rule) {
+		super.setRule(rule);
+		writeHeader(current, generation);
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Numbers the current generation, as when it is loaded from a snapshot.
+	 */
+	public void setGeneration(long generation) {
+		this.generation = generation;
+		writeHeader(current, generation);
+		writeHeader(1 - current, generation - 1);
+	}
+
+	public File getFile() {
+		return files[0];
+	}
+
+	/**
+	 * Writes the current generation and its header back to the disk and waits
+	 * until they are there.
+	 */
+	public void checkpoint() {
+		getBoard().force();
+		headers[current].force();
+	}
+
+	/**
+	 * Checkpoints, unmaps and closes both files, or deletes them if they are
+	 * temporary. Throws UncheckedIOException if a file cannot be closed.
+	 */
+	@Override
+	public void close() {
+		if (!channels[0].isOpen())
+			return;
+		if (!temporary)
+			checkpoint();
+		super.close();
+		IOException failure = null;
+		for (int i = 0; i < 2; i++) {
+			OffHeapBoard.free(headers[i]);
+			try {
+				channels[i].close();
+			} catch (IOException e) {
+				failure = e;
+			}
+			if (temporary)
+				files[i].delete();
+		}
+		if (failure != null && !temporary)
+			throw new UncheckedIOException(failure);
+	}
+}
@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A rows x columns board of bits kept outside the Java heap, in direct
+ * ByteBuffers, laid out like the rows of BitGeneration: bit c % 64 of word
+ * c / 64 of a row is column c, and every row takes a whole number of longs.
+ * A 100,000 x 100,000 board is 1.25 GB that the garbage collector never
+ * scans or copies, and -Xmx does not have to make room for.
+ *
+ * A direct buffer holds at most 2 GB, so the rows are split into chunks of
+ * at most CHUNK_BYTES each. A board made by map() lives in a file instead,
+ * its chunks mapped read-write, and what is written to it reaches the file
+ * through the page cache. The memory is released, or the file unmapped, by
+ * close(), without waiting for the buffers to be collected; the board cannot
+ * be used afterwards. Reads and writes are not synchronized, callers arrange that
+ * nobody writes a row while it is read.
+ */
+public class OffHeapBoard implements AutoCloseable {
+	private static final long CHUNK_BYTES = 1L << 30;
+	private static final Method INVOKE_CLEANER;// sun.misc.Unsafe.invokeCleaner, null if not available
+	private static final Object UNSAFE;
+
+	static {
+		Method invokeCleaner = null;
+		Object unsafe = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// the buffers are freed when they are collected instead
+		}
+		INVOKE_CLEANER = invokeCleaner;
+		UNSAFE = unsafe;
+	}
+
+	private final int rows;
+	private final int columns;
+	private final int words;// longs per row
+	private final int chunkRows;// rows per chunk
+	private ByteBuffer[] chunks;// null once closed
+	private LongBuffer[] longChunks;// views of chunks
+
+	public OffHeapBoard(int rows, int columns) {
+		this(rows, columns, new ByteBuffer[chunkCount(rows, columns)]);
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			chunks[chunk] = ByteBuffer.allocateDirect(chunkBytes(chunk)).order(ByteOrder.nativeOrder());
+			longChunks[chunk] = chunks[chunk].asLongBuffer();
+		}
+	}
+
+	/**
+	 * A board whose chunks are still to be filled in.
+	 */
+	private OffHeapBoard(int rows, int columns, ByteBuffer[] chunks) {
+		this.rows = rows;
+		this.columns = columns;
+		words = (columns + 63) >>> 6;
+		chunkRows = chunkRows(rows, words);
+		this.chunks = chunks;
+		longChunks = new LongBuffer[chunks.length];
+	}
+
+	private static int chunkRows(int rows, int words) {
+		return (int) Math.max(1, Math.min(rows, CHUNK_BYTES / (words * 8L)));
+	}
+
+	private static int chunkCount(int rows, int columns) {
+		int chunkRows = chunkRows(rows, (columns + 63) >>> 6);
+		return (rows + chunkRows - 1) / chunkRows;
+	}
+
+	/**
+	 * A board kept in the file behind channel, its rows starting at position,
+	 * little-endian whatever the platform so the file can move between
+	 * machines. The file grows to fit; rows it did not reach are dead.
+	 */
+	public static OffHeapBoard map(FileChannel channel, long position, int rows, int columns) throws IOException {
+		OffHeapBoard board = new OffHeapBoard(rows, columns, new ByteBuffer[chunkCount(rows, columns)]);
+		try {
+			for (int chunk = 0; chunk < board.chunks.length; chunk++) {
+				long chunkPosition = position + (long) chunk * board.chunkRows * board.words * 8;
+				board.chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, chunkPosition, board.chunkBytes(chunk))
+						.order(ByteOrder.LITTLE_ENDIAN);
+				board.longChunks[chunk] = board.chunks[chunk].asLongBuffer();
+			}
+		} catch (IOException e) {
+			board.close();
+			throw e;
+		}
+		return board;
+	}
+
+	private int chunkBytes(int chunk) {
+		return Math.min(chunkRows, rows - chunk * chunkRows) * words * 8;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Longs per row.
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	public long getWord(int row, int word) {
+		return longChunks[row / chunkRows].get((row % chunkRows) * words + word);
+	}
+
+	public void setWord(int row, int word, long value) {
+		longChunks[row / chunkRows].put((row % chunkRows) * words + word, value);
+	}
+
+	/**
+	 * Copies a row into the first getWords() longs of into.
+	 */
+	public void readRow(int row, long[] into) {
+		longChunks[row / chunkRows].get((row % chunkRows) * words, into, 0, words);
+	}
+
+	public void writeRow(int row, long[] from) {
+		longChunks[row / chunkRows].put((row % chunkRows) * words, from, 0, words);
+	}
+
+	public boolean isAlive(int row, int column) {
+		return (getWord(row, column >>> 6) & (1L << column)) != 0;
+	}
+
+	public void setAlive(int row, int column, boolean alive) {
+		long word = getWord(row, column >>> 6);
+		setWord(row, column >>> 6, alive ? word | (1L << column) : word & ~(1L << column));
+	}
+
+	public long getPopulation() {
+		long population = 0;
+		for (LongBuffer chunk : longChunks) {
+			for (int i = 0; i < chunk.limit(); i++) {
+				population += Long.bitCount(chunk.get(i));
+			}
+		}
+		return population;
+	}
+
+	public void clear() {
+		for (LongBuffer chunk : longChunks) {
+			for (int i = 0; i < chunk.limit(); i++) {
+				chunk.put(i, 0);
+			}
+		}
+	}
+
+	/**
+	 * Writes a mapped board back to its file and waits until it is on the
+	 * disk. Does nothing for a board in memory.
+	 */
+	public void force() {
+		for (ByteBuffer chunk : chunks) {
+			if (chunk instanceof MappedByteBuffer)
+				((MappedByteBuffer) chunk).force();
+		}
+	}
+
+	/**
+	 * Frees the memory or unmaps the file now, or leaves it to the collector
+	 * on a JVM without sun.misc.Unsafe. Closing twice does nothing.
+	 */
+	@Override
+	public void close() {
+		if (chunks == null)
+			return;
+		ByteBuffer[] closing = chunks;
+		chunks = null;
+		longChunks = null;
+		for (ByteBuffer chunk : closing) {
+			if (chunk != null)
+				free(chunk);
+		}
+	}
+
+	/**
+	 * Frees a direct or mapped buffer that is not a slice or duplicate, which
+	 * must not be used afterwards.
+	 */
+	static void free(ByteBuffer buffer) {
+		if (INVOKE_CLEANER == null)
+			return;
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (ReflectiveOperationException e) {
+			// left to the collector
+		}
+	}
+}
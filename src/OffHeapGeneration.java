@@ -0,0 +1,188 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * BitGeneration with its two generations in OffHeapBoards instead of
+ * long[][], for worlds too big for the heap. Each band of rows is stepped
+ * through a window of three rows copied onto the heap, up, middle and down,
+ * which slides down the band one row at a time, so every row is read from
+ * the buffer once and the kernel is BitGeneration's own. The window is kept
+ * per thread and reused from step to step.
+ *
+ * The boolean[][] view the other engines keep is only allocated when
+ * getCurrentGeneration() is called, and is refreshed from the board on
+ * demand; a board built with OffHeapGeneration(rows, columns, pool) never
+ * needs one. GenerationFrame copies the board for Grid through getBoard().
+ * close() frees both boards. MappedUniverse steps the same way between two
+ * mapped files.
+ */
+public class OffHeapGeneration extends PackedGeneration {
+	private final int rows;
+	private final int columns;
+	private final int words;
+	private final long lastWordMask;
+	private final ThreadLocal<long[][]> windows = new ThreadLocal<long[][]>() {
+		@Override
+		protected long[][] initialValue() {
+			return new long[4][words];// up, middle, down and the row stepped out of them
+		}
+	};
+	private OffHeapBoard currentGeneration;
+	private OffHeapBoard nextGeneration;
+	private boolean[][] cells;// unpacked view, null until asked for
+	private boolean viewStale;
+
+	public OffHeapGeneration(boolean[][] cells, ForkJoinPool pool) {
+		this(cells.length, cells[0].length, pool);
+		setCurrentGeneration(cells);
+	}
+
+	/**
+	 * An empty rows x columns torus, filled through setAlive().
+	 */
+	public OffHeapGeneration(int rows, int columns, ForkJoinPool pool) {
+		this(new OffHeapBoard(rows, columns), new OffHeapBoard(rows, columns), pool);
+	}
+
+	/**
+	 * Steps back and forth between two boards of the same size, the current
+	 * generation first.
+	 */
+	protected OffHeapGeneration(OffHeapBoard currentGeneration, OffHeapBoard nextGeneration, ForkJoinPool pool) {
+		super(currentGeneration.getRows(), currentGeneration.getColumns(), pool);
+		this.currentGeneration = currentGeneration;
+		this.nextGeneration = nextGeneration;
+		rows = getRows();
+		columns = getColumns();
+		words = getWords();
+		lastWordMask = getLastWordMask();
+	}
+
+	@Override
+	public void step() {
+		stepBands(false);
+		OffHeapBoard swap = currentGeneration;
+		currentGeneration = nextGeneration;
+		nextGeneration = swap;
+		viewStale = true;
+	}
+
+	/**
+	 * Rows [fromRow, toRow) of one step, through the sliding window; there is
+	 * no view to update while stepping.
+	 */
+	@Override
+	void stepRows(int fromRow, int toRow, boolean updateView) {
+		long[][] window = windows.get();
+		long[] up = window[0];
+		long[] middle = window[1];
+		long[] down = window[2];
+		long[] out = window[3];
+		currentGeneration.readRow((fromRow - 1 + rows) % rows, up);
+		currentGeneration.readRow(fromRow, middle);
+		for (int row = fromRow; row < toRow; row++) {
+			currentGeneration.readRow((row + 1) % rows, down);
+			stepWords(up, middle, down, out, 0, words);
+			out[words - 1] &= lastWordMask;
+			nextGeneration.writeRow(row, out);
+			long[] free = up;
+			up = middle;
+			middle = down;
+			down = free;
+		}
+	}
+
+	/**
+	 * The current generation, valid until the next step.
+	 */
+	public OffHeapBoard getBoard() {
+		return currentGeneration;
+	}
+
+	@Override
+	public boolean isAlive(int row, int column) {
+		return currentGeneration.isAlive(row, column);
+	}
+
+	@Override
+	public void setAlive(int row, int column, boolean alive) {
+		currentGeneration.setAlive(row, column, alive);
+		if (cells != null && !viewStale)
+			cells[row][column] = alive;
+	}
+
+	@Override
+	public long getPopulation() {
+		return currentGeneration.getPopulation();
+	}
+
+	@Override
+	long getFlippedWord(int row, int word) {
+		return currentGeneration.getWord(row, word) ^ nextGeneration.getWord(row, word);
+	}
+
+	@Override
+	public boolean[][] getCurrentGeneration() {
+		if (cells == null) {
+			cells = new boolean[rows][columns];
+			viewStale = true;
+		}
+		if (viewStale) {
+			long[] packed = new long[words];
+			for (int row = 0; row < rows; row++) {
+				currentGeneration.readRow(row, packed);
+				for (int column = 0; column < columns; column++) {
+					cells[row][column] = (packed[column >>> 6] & (1L << column)) != 0;
+				}
+			}
+			viewStale = false;
+		}
+		return cells;
+	}
+
+	/**
+	 * Packs the given cells into the current board. The array itself becomes
+	 * the view.
+	 */
+	@Override
+	public void setCurrentGeneration(boolean[][] currentGeneration) {
+		cells = currentGeneration;
+		viewStale = false;
+		clearChanges();
+		long[] packed = new long[words];
+		for (int row = 0; row < rows; row++) {
+			for (int word = 0; word < words; word++) {
+				packed[word] = 0;
+			}
+			for (int column = 0; column < columns; column++) {
+				if (cells[row][column])
+					packed[column >>> 6] |= 1L << column;
+			}
+			this.currentGeneration.writeRow(row, packed);
+		}
+	}
+
+	/**
+	 * Clears the board in place, without the view the default would unpack.
+	 */
+	@Override
+	public void clear() {
+		currentGeneration.clear();
+		viewStale = true;
+		clearChanges();
+	}
+
+	@Override
+	public boolean[][] getNextGeneration() {
+		step();
+		return getCurrentGeneration();
+	}
+
+	/**
+	 * Frees both boards.
+	 */
+	@Override
+	public void close() {
+		currentGeneration.close();
+		nextGeneration.close();
+	}
+}
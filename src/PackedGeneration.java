@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * What the bit-packed engines share, wherever they keep their rows:
+ * BitGeneration on the heap and OffHeapGeneration in OffHeapBoards. Rows are
+ * packed one bit per cell, column c in bit c % 64 of word c / 64, stepped
+ * with BitGeneration's kernels and, given a ForkJoinPool, in row bands that
+ * only write their own rows, so bands never synchronise with each other.
+ *
+ * The changed cells are extracted from the XOR of the two generations on
+ * demand, so stepping alone never pays for it. The list grows with the
+ * changes up to MAX_CHANGES; past that, or on a board with more cells than
+ * an int can index, getChangedCells() returns null instead.
+ */
+public abstract class PackedGeneration implements GenerationEngine {
+	/**
+	 * Most changed cells listed after a step.
+	 */
+	public static final int MAX_CHANGES = 1 << 22;
+
+	/**
+	 * Minimum number of words stepped by one band, smaller bands cost more to
+	 * fork than to compute.
+	 */
+	private static final int WORDS_PER_BAND = 4096;
+
+	private final int rows;
+	private final int columns;
+	private final int words;// longs per row
+	private final long lastWordMask;// valid bits of the last word of a row
+	private final int bandRows;// rows below which a band is not split further
+	private final ForkJoinPool pool;// null for single-threaded stepping
+	private int[] changedCells = new int[0];// grown on demand, null when the changes were not listed
+	private int changedCount;
+	private boolean changesStale;// changedCells not yet extracted from the last step
+	private Rule rule = Rule.LIFE;
+	private long[] ruleMasks;// null for Life, which has its own kernel
+
+	protected PackedGeneration(int rows, int columns, ForkJoinPool pool) {
+		this.rows = rows;
+		this.columns = columns;
+		this.pool = pool;
+		words = (columns + 63) >>> 6;
+		lastWordMask = (columns & 63) == 0 ? -1L : (1L << (columns & 63)) - 1;
+		bandRows = Math.max(1, WORDS_PER_BAND / words);
+	}
+
+	/**
+	 * Computes every row of the next generation, in bands when there is a
+	 * pool, and marks the changes stale. The caller swaps the generations.
+	 */
+	final void stepBands(boolean updateView) {
+		if (pool == null || rows <= bandRows)
+			stepRows(0, rows, updateView);
+		else
+			pool.invoke(new Band(0, rows, updateView));
+		changesStale = true;
+	}
+
+	/**
+	 * Rows [fromRow, toRow) of the next generation, unpacked into the view as
+	 * well if updateView is set and the engine keeps one.
+	 */
+	abstract void stepRows(int fromRow, int toRow, boolean updateView);
+
+	/**
+	 * Rows [fromRow, toRow) of one step, halved until a band is small enough to
+	 * run directly.
+	 */
+	private class Band extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int fromRow;
+		private final int toRow;
+		private final boolean updateView;
+
+		Band(int fromRow, int toRow, boolean updateView) {
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.updateView = updateView;
+		}
+
+		@Override
+		protected void compute() {
+			if (toRow - fromRow <= bandRows) {
+				stepRows(fromRow, toRow, updateView);
+			} else {
+				int middleRow = (fromRow + toRow) >>> 1;
+				invokeAll(new Band(fromRow, middleRow, updateView), new Band(middleRow, toRow, updateView));
+			}
+		}
+	}
+
+	/**
+	 * Words [fromWord, toWord) of out, 64 cells at a time, with the engine's
+	 * rule.
+	 */
+	final void stepWords(long[] up, long[] middle, long[] down, long[] out, int fromWord, int toWord) {
+		BitGeneration.stepWords(ruleMasks, columns, up, middle, down, out, fromWord, toWord);
+	}
+
+	/**
+	 * The word of the row that holds the cells flipped by the last step, the
+	 * XOR of the two generations.
+	 */
+	abstract long getFlippedWord(int row, int word);
+
+	/**
+	 * The flipped cells, as indices row * columns + column, or null when more
+	 * than MAX_CHANGES flipped or the board is too big to index.
+	 */
+	@Override
+	public int[] getChangedCells() {
+		if (changesStale)
+			extractChanges();
+		return changedCells;
+	}
+
+	@Override
+	public int getChangedCount() {
+		if (changesStale)
+			extractChanges();
+		return changedCount;
+	}
+
+	private void extractChanges() {
+		changesStale = false;
+		changedCount = 0;
+		if (changedCells == null)
+			changedCells = new int[0];
+		if ((long) rows * columns > Integer.MAX_VALUE) {
+			changedCells = null;
+			return;
+		}
+		for (int row = 0; row < rows; row++) {
+			long rowStart = (long) row * columns;
+			for (int word = 0; word < words; word++) {
+				long flipped = getFlippedWord(row, word);
+				while (flipped != 0) {
+					if (changedCount == changedCells.length) {
+						if (changedCount == MAX_CHANGES) {
+							changedCells = null;
+							changedCount = 0;
+							return;
+						}
+						changedCells = Arrays.copyOf(changedCells,
+								Math.min(MAX_CHANGES, Math.max(1024, changedCount * 2)));
+					}
+					changedCells[changedCount++] = (int) (rowStart + (word << 6) + Long.numberOfTrailingZeros(flipped));
+					flipped &= flipped - 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the last step's changes, for a board that was replaced.
+	 */
+	final void clearChanges() {
+		changedCount = 0;
+		changesStale = false;
+		if (changedCells == null)
+			changedCells = new int[0];
+	}
+
+	@Override
+	public Rule getRule() {
+		return rule;
+	}
+
+	@Override
+	public void setRule(Rule rule) {
+		this.rule = rule;
+		ruleMasks = rule.isLife() ? null : rule.getWordMasks();
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Longs per packed row.
+	 */
+	final int getWords() {
+		return words;
+	}
+
+	final long getLastWordMask() {
+		return lastWordMask;
+	}
+
+	/**
+	 * The masks of the general kernel, null while stepping Life.
+	 */
+	final long[] getRuleMasks() {
+		return ruleMasks;
+	}
+}
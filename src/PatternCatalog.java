@@ -0,0 +1,424 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalogue of a pattern library folder backed by a binary index, so that
+ * patterns are parsed once rather than every time they are opened.
+ *
+ * Only files named with one of PATTERN_EXTENSIONS are indexed, so snapshots,
+ * universes and anything else kept in the folder are never parsed as
+ * patterns. The index lives in INDEX_NAME at the root of the library. It holds
+ * one entry per pattern file (path, category folder, name, rule, bounding box,
+ * population, and the file's modification time and length) followed by the
+ * cells of every pattern as a bit blob cropped to its bounding box, one bit per
+ * cell in row-major order. Only the entries are read up front; blobs are read
+ * from the index when a pattern is loaded and kept in an LRU cache of
+ * CACHED_BLOBS patterns. An entry is re-indexed when its file's modification
+ * time or length changes, and dropped when the file goes away.
+ *
+ * If the index cannot be written the catalogue still works, keeping the blobs
+ * of the patterns it parsed in memory.
+ */
+public class PatternCatalog {
+	public static final String INDEX_NAME = ".pattern-index";
+	public static final String[] PATTERN_EXTENSIONS = { ".life", ".lif", ".rle", ".cells", ".txt" };
+	private static final int MAGIC = 0x4C494658;// "LIFX"
+	private static final int VERSION = 1;
+	private static final int CACHED_BLOBS = 64;
+	private static final int PARSE_SPAN = 1 << 30;// torus size used while indexing, see CellCollector
+
+	private final File root;
+	private final File indexFile;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	private long blobBase;// offset of the first blob in indexFile
+	private boolean indexRead;
+	private final Map<String, byte[]> blobs = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+			return size() > CACHED_BLOBS;
+		}
+	};
+
+	/**
+	 * One pattern of the library.
+	 */
+	public static class Entry {
+		private String path;// relative to the root, '/' separated
+		private String category;
+		private String name;
+		private String rule;// empty when the file names none
+		private long modified;
+		private long length;
+		private int minRow;// bounding box, relative to the pattern's own origin
+		private int minColumn;
+		private int width;
+		private int height;
+		private long population;
+		private long blobOffset;
+		private int blobLength;
+		private byte[] pendingBlob;// parsed but not yet written to the index
+
+		public String getPath() {
+			return path;
+		}
+
+		/**
+		 * The top level folder the pattern is in, or "" at the root.
+		 */
+		public String getCategory() {
+			return category;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getRule() {
+			return rule.isEmpty() ? null : rule;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public long getPopulation() {
+			return population;
+		}
+	}
+
+	public PatternCatalog(File root) {
+		this.root = root;
+		indexFile = new File(root, INDEX_NAME);
+	}
+
+	/**
+	 * Brings the whole catalogue up to date with the folder, parsing only the
+	 * files that are new or changed, and rewrites the index if anything did.
+	 * Files that cannot be parsed are left out. The catalogue is only locked
+	 * one file at a time, so it can be browsed while a scan runs.
+	 */
+	public void scan() {
+		synchronized (this) {
+			readIndex();
+		}
+		List<File> files = new ArrayList<File>();
+		collectFiles(root, files);
+		boolean changed = false;
+		List<String> seen = new ArrayList<String>();
+		for (File file : files) {
+			String path = relativePath(file);
+			try {
+				synchronized (this) {
+					changed |= refresh(path, file);
+				}
+				seen.add(path);
+			} catch (IOException e) {
+				continue;
+			}
+		}
+		synchronized (this) {
+			changed |= entries.keySet().retainAll(seen);
+			if (changed)
+				writeIndex();
+		}
+	}
+
+	/**
+	 * The entries in the order the files were found.
+	 */
+	public synchronized List<Entry> getEntries() {
+		return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+	}
+
+	/**
+	 * The up to date entry of a file of the library, indexing it first if it is
+	 * new or changed, or null when the file is not a pattern file under the
+	 * library folder.
+	 */
+	public synchronized Entry entryFor(File file) throws IOException {
+		String path = relativePath(file);
+		if (path == null || !file.isFile() || !isPatternFile(file))
+			return null;
+		readIndex();
+		if (refresh(path, file))
+			writeIndex();
+		return entries.get(path);
+	}
+
+	/**
+	 * The entry of a file as last indexed, without touching the file, or null.
+	 */
+	public synchronized Entry peek(File file) {
+		String path = relativePath(file);
+		return path == null ? null : entries.get(path);
+	}
+
+	/**
+	 * Writes the live cells of the pattern into sink the way PatternLoader
+	 * would, with the pattern's own origin at (originRow, originColumn) of a
+	 * rows x columns torus.
+	 */
+	public synchronized void load(Entry entry, CellSink sink, int rows, int columns, int originRow, int originColumn)
+			throws IOException {
+		byte[] blob = blob(entry);
+		for (int i = 0; i < blob.length; i++) {
+			int bits = blob[i] & 0xFF;
+			while (bits != 0) {
+				int cell = (i << 3) + Integer.numberOfTrailingZeros(bits);
+				int row = cell / entry.width;
+				int column = cell - row * entry.width;
+				sink.setAlive(Math.floorMod(originRow + entry.minRow + row, rows),
+						Math.floorMod(originColumn + entry.minColumn + column, columns), true);
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	private byte[] blob(Entry entry) throws IOException {
+		if (entry.pendingBlob != null)
+			return entry.pendingBlob;
+		byte[] blob = blobs.get(entry.path);
+		if (blob == null) {
+			blob = new byte[entry.blobLength];
+			try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer buffer = ByteBuffer.wrap(blob);
+				long position = blobBase + entry.blobOffset;
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, position + buffer.position()) < 0)
+						throw new IOException(indexFile + " is truncated");
+				}
+			}
+			blobs.put(entry.path, blob);
+		}
+		return blob;
+	}
+
+	/**
+	 * Re-indexes the file if its entry is missing or out of date, returns
+	 * whether it did.
+	 */
+	private boolean refresh(String path, File file) throws IOException {
+		Entry entry = entries.get(path);
+		if (entry != null && entry.modified == file.lastModified() && entry.length == file.length())
+			return false;
+		entries.put(path, index(path, file));
+		blobs.remove(path);
+		return true;
+	}
+
+	private Entry index(String path, File file) throws IOException {
+		CellCollector collector = new CellCollector();
+		PatternInfo info = PatternLoader.load(file, collector, PARSE_SPAN, PARSE_SPAN, 0, 0);
+		Entry entry = new Entry();
+		entry.path = path;
+		int slash = path.indexOf('/');
+		entry.category = slash < 0 ? "" : path.substring(0, slash);
+		String fileName = file.getName();
+		entry.name = info.getName() != null ? info.getName()
+				: fileName.lastIndexOf('.') > 0 ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+		entry.rule = info.getRule() == null ? "" : info.getRule();
+		entry.modified = file.lastModified();
+		entry.length = file.length();
+		entry.population = collector.count;
+		if (collector.count == 0) {
+			entry.pendingBlob = new byte[0];
+			return entry;
+		}
+		entry.minRow = collector.minRow;
+		entry.minColumn = collector.minColumn;
+		entry.width = collector.maxColumn - collector.minColumn + 1;
+		entry.height = collector.maxRow - collector.minRow + 1;
+		byte[] blob = new byte[(int) (((long) entry.width * entry.height + 7) >>> 3)];
+		for (int i = 0; i < collector.count; i++) {
+			int cell = (collector.cells[2 * i] - entry.minRow) * entry.width + collector.cells[2 * i + 1] - entry.minColumn;
+			blob[cell >>> 3] |= 1 << (cell & 7);
+		}
+		entry.pendingBlob = blob;
+		return entry;
+	}
+
+	/**
+	 * Gathers the live cells of a pattern parsed onto a PARSE_SPAN torus,
+	 * turning wrapped coordinates back into negative ones.
+	 */
+	private static class CellCollector implements CellSink {
+		int[] cells = new int[256];// row, column pairs
+		int count;
+		int minRow = Integer.MAX_VALUE;
+		int minColumn = Integer.MAX_VALUE;
+		int maxRow = Integer.MIN_VALUE;
+		int maxColumn = Integer.MIN_VALUE;
+
+		@Override
+		public void setAlive(int row, int column, boolean alive) {
+			if (row >= PARSE_SPAN / 2)
+				row -= PARSE_SPAN;
+			if (column >= PARSE_SPAN / 2)
+				column -= PARSE_SPAN;
+			if (2 * count == cells.length)
+				cells = Arrays.copyOf(cells, cells.length * 2);
+			cells[2 * count] = row;
+			cells[2 * count + 1] = column;
+			count++;
+			minRow = Math.min(minRow, row);
+			minColumn = Math.min(minColumn, column);
+			maxRow = Math.max(maxRow, row);
+			maxColumn = Math.max(maxColumn, column);
+		}
+	}
+
+	private void collectFiles(File folder, List<File> files) {
+		File[] children = folder.listFiles();
+		if (children == null)
+			return;
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.getName().startsWith("."))
+				continue;
+			if (child.isDirectory())
+				collectFiles(child, files);
+			else if (child.isFile() && isPatternFile(child))
+				files.add(child);
+		}
+	}
+
+	private static boolean isPatternFile(File file) {
+		String name = file.getName().toLowerCase();
+		for (String extension : PATTERN_EXTENSIONS) {
+			if (name.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+
+	private String relativePath(File file) {
+		try {
+			Path rootPath = root.getCanonicalFile().toPath();
+			Path filePath = file.getCanonicalFile().toPath();
+			if (!filePath.startsWith(rootPath) || filePath.equals(rootPath))
+				return null;
+			return rootPath.relativize(filePath).toString().replace(File.separatorChar, '/');
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the entries of the index once; a missing or unreadable index is
+	 * simply rebuilt.
+	 */
+	private void readIndex() {
+		if (indexRead)
+			return;
+		indexRead = true;
+		if (!indexFile.isFile())
+			return;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return;
+			int headerLength = in.readInt();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				Entry entry = new Entry();
+				entry.path = in.readUTF();
+				entry.category = in.readUTF();
+				entry.name = in.readUTF();
+				entry.rule = in.readUTF();
+				entry.modified = in.readLong();
+				entry.length = in.readLong();
+				entry.minRow = in.readInt();
+				entry.minColumn = in.readInt();
+				entry.width = in.readInt();
+				entry.height = in.readInt();
+				entry.population = in.readLong();
+				entry.blobOffset = in.readLong();
+				entry.blobLength = in.readInt();
+				entries.put(entry.path, entry);
+			}
+			blobBase = 12 + headerLength;// magic, version and header length come first
+		} catch (IOException e) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Writes every entry and blob to a new index next to the old one, then
+	 * moves it into place, so a reader never sees a half written index.
+	 */
+	private void writeIndex() {
+		File temporary = new File(root, INDEX_NAME + ".tmp");
+		int headerLength;
+		try {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(header);
+			out.writeInt(entries.size());
+			long offset = 0;
+			for (Entry entry : entries.values()) {
+				out.writeUTF(entry.path);
+				out.writeUTF(entry.category);
+				out.writeUTF(entry.name);
+				out.writeUTF(entry.rule);
+				out.writeLong(entry.modified);
+				out.writeLong(entry.length);
+				out.writeInt(entry.minRow);
+				out.writeInt(entry.minColumn);
+				out.writeInt(entry.width);
+				out.writeInt(entry.height);
+				out.writeLong(entry.population);
+				out.writeLong(offset);
+				out.writeInt(entry.pendingBlob != null ? entry.pendingBlob.length : entry.blobLength);
+				offset += entry.pendingBlob != null ? entry.pendingBlob.length : entry.blobLength;
+			}
+			out.flush();
+			try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				file.writeInt(MAGIC);
+				file.writeInt(VERSION);
+				headerLength = header.size();
+				file.writeInt(headerLength);
+				header.writeTo(file);
+				for (Entry entry : entries.values()) {
+					file.write(blob(entry));
+				}
+			}
+			Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			temporary.delete();
+			return;// keep the parsed blobs in memory
+		}
+		// Point the entries at their blobs in the index just written
+		blobBase = 12 + headerLength;
+		long offset = 0;
+		for (Entry entry : entries.values()) {
+			if (entry.pendingBlob != null) {
+				entry.blobLength = entry.pendingBlob.length;
+				entry.pendingBlob = null;
+			}
+			entry.blobOffset = offset;
+			offset += entry.blobLength;
+		}
+	}
+}
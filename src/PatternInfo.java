@@ -0,0 +1,57 @@
+/**
+ * What PatternLoader learned about a pattern while loading it.
+ */
+public class PatternInfo {
+	private String name;
+	private String rule;
+	private int width;
+	private int height;
+	private long population;
+
+	/**
+	 * From the #N line, or null.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * The rule string of the RLE header or the #r / #R line, as written in the
+	 * file, or null when the file names none.
+	 */
+	public String getRule() {
+		return rule;
+	}
+
+	public void setRule(String rule) {
+		this.rule = rule;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public void setWidth(int width) {
+		this.width = width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public void setHeight(int height) {
+		this.height = height;
+	}
+
+	public long getPopulation() {
+		return population;
+	}
+
+	public void setPopulation(long population) {
+		this.population = population;
+	}
+}
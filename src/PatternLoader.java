@@ -0,0 +1,330 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes patterns. Two formats are read, told apart by their first
+ * line that is not a comment:
+ * <ul>
+ * <li>RLE: an "x = W, y = H, rule = B3/S23" header followed by runs such as
+ * "3o2b$", where b is a dead cell, o (or any other letter) a live one, $ ends
+ * a row and ! the pattern.</li>
+ * <li>Plaintext, as in the .life files of the Life Patterns library: one line
+ * per row where '*' or 'O' is a live cell. A "#P x y" line starts a new block
+ * of rows at that offset.</li>
+ * </ul>
+ * Lines starting with '#' are comments, except #N (name), #r (rule) and, in
+ * plaintext, #P and #R (rule). The file is memory-mapped and parsed byte by
+ * byte, and live cells go straight into a CellSink without building any
+ * intermediate strings or arrays, so even multi-megabyte patterns load in
+ * milliseconds. Only live cells are written: the board is expected to be clear.
+ */
+public class PatternLoader {
+	private static final int RLE_LINE_LENGTH = 70;
+
+	/**
+	 * Copies the pattern into cells with its top left corner at (originRow,
+	 * originColumn), wrapping around the edges of the board.
+	 */
+	public static PatternInfo load(File file, boolean[][] cells, int originRow, int originColumn) throws IOException {
+		return load(file, new CellSink() {
+			@Override
+			public void setAlive(int row, int column, boolean alive) {
+				cells[row][column] = alive;
+			}
+		}, cells.length, cells[0].length, originRow, originColumn);
+	}
+
+	/**
+	 * Writes the live cells of the pattern into sink, with its top left corner
+	 * at (originRow, originColumn) of a rows x columns torus.
+	 */
+	public static PatternInfo load(File file, CellSink sink, int rows, int columns, int originRow, int originColumn)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			return new Parser(file, buffer, sink, rows, columns, originRow, originColumn).parse();
+		}
+	}
+
+	/**
+	 * Writes the live cells of a rows x columns board as RLE, cropped to their
+	 * bounding box. rule may be null, for B3/S23.
+	 */
+	public static void save(File file, GenerationEngine engine, int rows, int columns, String rule) throws IOException {
+		int minRow = rows, minColumn = columns, maxRow = -1, maxColumn = -1;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (engine.isAlive(row, column)) {
+					minRow = Math.min(minRow, row);
+					maxRow = Math.max(maxRow, row);
+					minColumn = Math.min(minColumn, column);
+					maxColumn = Math.max(maxColumn, column);
+				}
+			}
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII)) {
+			if (maxRow < 0) {
+				writer.write("x = 0, y = 0, rule = " + (rule == null ? "B3/S23" : rule) + "\n!\n");
+				return;
+			}
+			writer.write("x = " + (maxColumn - minColumn + 1) + ", y = " + (maxRow - minRow + 1) + ", rule = "
+					+ (rule == null ? "B3/S23" : rule) + "\n");
+			RleWriter rle = new RleWriter(writer);
+			int endedRows = 0;// $ not yet written, held back so blank rows become one run
+			for (int row = minRow; row <= maxRow; row++) {
+				int deadCells = 0;// dead cells not yet written, dropped at the end of a row
+				int column = minColumn;
+				while (column <= maxColumn) {
+					boolean alive = engine.isAlive(row, column);
+					int run = 1;
+					while (column + run <= maxColumn && engine.isAlive(row, column + run) == alive)
+						run++;
+					if (alive) {
+						rle.run(endedRows, '$');
+						rle.run(deadCells, 'b');
+						rle.run(run, 'o');
+						endedRows = 0;
+						deadCells = 0;
+					} else {
+						deadCells += run;
+					}
+					column += run;
+				}
+				endedRows++;
+			}
+			rle.run(1, '!');
+			rle.finish();
+		}
+	}
+
+	/**
+	 * Streams runs, breaking lines before they exceed RLE_LINE_LENGTH.
+	 */
+	private static class RleWriter {
+		private final BufferedWriter writer;
+		private int lineLength;
+
+		RleWriter(BufferedWriter writer) {
+			this.writer = writer;
+		}
+
+		void run(int count, char tag) throws IOException {
+			if (count == 0)
+				return;
+			String token = count == 1 ? String.valueOf(tag) : count + String.valueOf(tag);
+			if (lineLength + token.length() > RLE_LINE_LENGTH) {
+				writer.write('\n');
+				lineLength = 0;
+			}
+			writer.write(token);
+			lineLength += token.length();
+		}
+
+		void finish() throws IOException {
+			writer.write('\n');
+		}
+	}
+
+	private static class Parser {
+		private final File file;
+		private final MappedByteBuffer buffer;
+		private final CellSink sink;
+		private final int rows;
+		private final int columns;
+		private final int originRow;
+		private final int originColumn;
+		private final PatternInfo info = new PatternInfo();
+		private String lifeRule;// #R line, only a rule in plaintext files
+		private int maxRow = -1;
+		private int maxColumn = -1;
+
+		Parser(File file, MappedByteBuffer buffer, CellSink sink, int rows, int columns, int originRow,
+				int originColumn) {
+			this.file = file;
+			this.buffer = buffer;
+			this.sink = sink;
+			this.rows = rows;
+			this.columns = columns;
+			this.originRow = originRow;
+			this.originColumn = originColumn;
+		}
+
+		PatternInfo parse() throws IOException {
+			int blockRow = 0;// offset of the current #P block
+			int blockColumn = 0;
+			int row = 0;
+			while (buffer.hasRemaining()) {
+				int start = buffer.position();
+				byte first = buffer.get(start);
+				if (first == '#') {
+					buffer.get();
+					byte type = buffer.hasRemaining() ? buffer.get() : (byte) '\n';
+					if (type == 'P' || type == 'p') {
+						blockColumn = readInt();
+						blockRow = readInt();
+						row = 0;
+						skipLine();
+					} else if (type == 'N') {
+						info.setName(readLine());
+					} else if (type == 'r') {
+						info.setRule(readLine());
+					} else if (type == 'R') {
+						lifeRule = readLine();
+					} else if (type != '\n') {
+						skipLine();
+					}
+				} else if (first == '!') {
+					skipLine();// comment line of the .cells format
+				} else if (first == 'x' && isRleHeader()) {
+					readRleHeader();
+					readRle();
+					return info;
+				} else {
+					readPlaintextRow(blockRow + row, blockColumn);
+					row++;
+				}
+			}
+			if (info.getRule() == null)
+				info.setRule(lifeRule);
+			info.setWidth(maxColumn + 1);
+			info.setHeight(maxRow + 1);
+			return info;
+		}
+
+		private void readPlaintextRow(int row, int column) {
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == '\n')
+					return;
+				if (b == '*' || b == 'O')
+					emit(row, column, 1);
+				if (b != '\r')
+					column++;
+			}
+		}
+
+		private boolean isRleHeader() {
+			for (int i = buffer.position() + 1; i < buffer.limit(); i++) {
+				byte b = buffer.get(i);
+				if (b == '=')
+					return true;
+				if (b != ' ' && b != '\t')
+					return false;
+			}
+			return false;
+		}
+
+		/**
+		 * Parses "x = W, y = H, rule = R", in any order.
+		 */
+		private void readRleHeader() throws IOException {
+			String header = readLine();
+			for (String field : header.split(",")) {
+				int equals = field.indexOf('=');
+				if (equals < 0)
+					continue;
+				String key = field.substring(0, equals).trim();
+				String value = field.substring(equals + 1).trim();
+				try {
+					if (key.equals("x"))
+						info.setWidth(Integer.parseInt(value));
+					else if (key.equals("y"))
+						info.setHeight(Integer.parseInt(value));
+					else if (key.equals("rule"))
+						info.setRule(value);
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ": bad RLE header \"" + header + "\"");
+				}
+			}
+		}
+
+		private void readRle() throws IOException {
+			int row = 0;
+			int column = 0;
+			int count = 0;
+			boolean lineStart = true;
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b >= '0' && b <= '9') {
+					count = count * 10 + (b - '0');
+				} else if (b == 'b' || b == '.') {
+					column += Math.max(count, 1);
+					count = 0;
+				} else if (b == '$') {
+					row += Math.max(count, 1);
+					column = 0;
+					count = 0;
+				} else if (b == '!') {
+					return;
+				} else if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')) {
+					emit(row, column, Math.max(count, 1));
+					column += Math.max(count, 1);
+					count = 0;
+				} else if (b == '#' && lineStart) {
+					skipLine();
+				} else if (b != '\n' && b != '\r' && b != ' ' && b != '\t') {
+					throw new IOException(file + ": unexpected '" + (char) b + "' at byte " + (buffer.position() - 1));
+				}
+				lineStart = b == '\n';
+			}
+		}
+
+		/**
+		 * Writes a run of live cells starting at the given cell of the pattern.
+		 */
+		private void emit(int row, int column, int run) {
+			int boardRow = Math.floorMod(originRow + row, rows);
+			for (int i = 0; i < run; i++) {
+				sink.setAlive(boardRow, Math.floorMod(originColumn + column + i, columns), true);
+			}
+			info.setPopulation(info.getPopulation() + run);
+			maxRow = Math.max(maxRow, row);
+			maxColumn = Math.max(maxColumn, column + run - 1);
+		}
+
+		/**
+		 * Reads an optionally signed decimal after any blanks.
+		 */
+		private int readInt() {
+			while (buffer.hasRemaining() && (buffer.get(buffer.position()) == ' ' || buffer.get(buffer.position()) == '\t'))
+				buffer.get();
+			boolean negative = buffer.hasRemaining() && buffer.get(buffer.position()) == '-';
+			if (negative)
+				buffer.get();
+			int value = 0;
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get(buffer.position());
+				if (b < '0' || b > '9')
+					break;
+				value = value * 10 + (b - '0');
+				buffer.get();
+			}
+			return negative ? -value : value;
+		}
+
+		private void skipLine() {
+			while (buffer.hasRemaining() && buffer.get() != '\n')
+				;
+		}
+
+		/**
+		 * Rest of the current line, trimmed. Only used for short header lines.
+		 */
+		private String readLine() {
+			int start = buffer.position();
+			skipLine();
+			byte[] bytes = new byte[buffer.position() - start];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = buffer.get(start + i);
+			}
+			return new String(bytes, StandardCharsets.ISO_8859_1).trim();
+		}
+	}
+}
@@ -0,0 +1,13 @@
+/**
+ * Steps the inner words of a packed row, the ones whose west and east
+ * neighbours do not wrap around. Implemented outside the main sources by
+ * VectorKernel, see VectorGeneration.
+ */
+public interface RowKernel {
+	/**
+	 * Computes out[1] onwards from the three rows, as far as whole vectors fit
+	 * before the last word, and returns the first word left for the caller.
+	 * masks are Rule.getWordMasks(), or null for Life.
+	 */
+	int stepInner(long[] masks, long[] up, long[] middle, long[] down, long[] out, int words);
+}
@@ -0,0 +1,123 @@
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An outer-totalistic rule in B/S notation: a dead cell is born when its
+ * number of live neighbours is one of the B digits and a live cell survives
+ * when it is one of the S digits. Conway's Life is B3/S23.
+ *
+ * A rule is compiled once into the forms the engines step with: a 512-entry
+ * table indexed by the 3x3 neighbourhood of a cell (any bit order, as long as
+ * the cell itself is bit 4) and, for the bit-packed engines, one all-zero or
+ * all-one word per neighbour count, see BitGeneration.nextWord(long[], ...).
+ */
+public final class Rule {
+	private static final Pattern BIRTHS_FIRST = Pattern.compile("(?i)B([0-8]*)/?S([0-8]*)");
+	private static final Pattern SURVIVALS_FIRST = Pattern.compile("(?i)S([0-8]*)/?B([0-8]*)");
+	private static final Pattern SURVIVALS_SLASH_BIRTHS = Pattern.compile("([0-8]*)/([0-8]*)");
+
+	public static final Rule LIFE = parse("B3/S23");
+
+	/**
+	 * Rules offered by the rule picker, name and rulestring.
+	 */
+	public static final String[][] PRESETS = { { "Life", "B3/S23" }, { "HighLife", "B36/S23" },
+			{ "Day & Night", "B3678/S34678" }, { "Seeds", "B2/S" }, { "Life without Death", "B3/S012345678" },
+			{ "2x2", "B36/S125" }, { "Maze", "B3/S12345" }, { "Replicator", "B1357/S1357" },
+			{ "Diamoeba", "B35678/S5678" }, { "Morley", "B368/S245" } };
+
+	private final int births;// bit n: born with n neighbours
+	private final int survivals;// bit n: survives with n neighbours
+	private final boolean[] table = new boolean[512];
+	private final long[] wordMasks = new long[18];// births then survivals, one word per neighbour count
+
+	private Rule(int births, int survivals) {
+		this.births = births;
+		this.survivals = survivals;
+		for (int neighbourhood = 0; neighbourhood < 512; neighbourhood++) {
+			int neighbours = Integer.bitCount(neighbourhood & ~16);
+			table[neighbourhood] = (((neighbourhood & 16) != 0 ? survivals : births) >>> neighbours & 1) != 0;
+		}
+		for (int count = 0; count <= 8; count++) {
+			wordMasks[count] = (births >>> count & 1) != 0 ? -1L : 0L;
+			wordMasks[9 + count] = (survivals >>> count & 1) != 0 ? -1L : 0L;
+		}
+	}
+
+	/**
+	 * Parses B3/S23, b3s23 or S23/B3, or the older survivals/births form 23/3.
+	 * Throws IllegalArgumentException for anything else.
+	 */
+	public static Rule parse(String text) {
+		String rule = text.replace(" ", "");
+		Matcher matcher;
+		if ((matcher = BIRTHS_FIRST.matcher(rule)).matches())
+			return new Rule(counts(matcher.group(1)), counts(matcher.group(2)));
+		if ((matcher = SURVIVALS_FIRST.matcher(rule)).matches())
+			return new Rule(counts(matcher.group(2)), counts(matcher.group(1)));
+		if ((matcher = SURVIVALS_SLASH_BIRTHS.matcher(rule)).matches())
+			return new Rule(counts(matcher.group(2)), counts(matcher.group(1)));
+		throw new IllegalArgumentException("Not a B/S rule: " + text);
+	}
+
+	private static int counts(String digits) {
+		int counts = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			counts |= 1 << (digits.charAt(i) - '0');
+		}
+		return counts;
+	}
+
+	/**
+	 * The next state of the centre cell of a 3x3 neighbourhood whose bit 4 is
+	 * the cell itself. Read only.
+	 */
+	public boolean[] getTable() {
+		return table;
+	}
+
+	/**
+	 * Per neighbour count 0 to 8, -1L where a dead cell is born, then per count
+	 * -1L where a live cell survives. Read only.
+	 */
+	public long[] getWordMasks() {
+		return wordMasks;
+	}
+
+	/**
+	 * Whether dead cells with no live neighbours are born, which an unbounded
+	 * plane or an engine that skips quiet regions cannot represent.
+	 */
+	public boolean isBirthOnZero() {
+		return (births & 1) != 0;
+	}
+
+	public boolean isLife() {
+		return equals(LIFE);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Rule && ((Rule) other).births == births && ((Rule) other).survivals == survivals;
+	}
+
+	@Override
+	public int hashCode() {
+		return births * 512 + survivals;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder rule = new StringBuilder("B");
+		for (int count = 0; count <= 8; count++) {
+			if ((births >>> count & 1) != 0)
+				rule.append(count);
+		}
+		rule.append("/S");
+		for (int count = 0; count <= 8; count++) {
+			if ((survivals >>> count & 1) != 0)
+				rule.append(count);
+		}
+		return rule.toString();
+	}
+}
@@ -1,3 +1,4 @@
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridBagConstraints;
@@ -8,54 +9,158 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.JMException;
 import javax.swing.BoxLayout;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 import javax.swing.SwingConstants;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
 import javax.swing.border.BevelBorder;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * Simulation is a JComponent consisting of two JPanel objects - 1) grid : Grid
  * 2) SimulationControls : SimulationControls
  * 
+ * Generations are stepped on a SteppingThread, never on the Event Dispatch
+ * Thread. Every change to the engine happens under stepLock and is followed by
+ * a GenerationFrame published through a TripleBuffer; the Event Dispatch Thread
+ * only picks up the latest frame and paints it, so a slow repaint drops frames
+ * instead of slowing the simulation down. In turbo mode the stepping thread
+ * runs flat out and publishes one frame per FRAME_NANOS, however many
+ * generations that took, and rateLabel shows the generations per second
+ * actually achieved. A CycleDetector follows every step of a torus engine;
+ * once the board dies out, stops changing or starts oscillating the status
+ * label says so and, unless -Dlife.autopause=false, the simulation pauses
+ * itself.
+ * 
  * @author TaraPrasad
  */
-public class Simulation extends JComponent implements ActionListener {
+public class Simulation extends JComponent {
 	private Game game;
 	private Grid grid;
 	private SimulationControls simulationControls;
 	private JPanel statusPanel;
+	private JSlider historySlider;// scrubs through the generations the HistoryStore retains
+	private boolean updatingHistorySlider;// set while showLatestFrame() moves it
 	private JLabel generationLabel;
+	private JLabel rateLabel;
 	private SpeedPanel speedPanel;
 	private JGradientButton backButton;
 	private SimulationState simulationState;
-	private Generation generation;
-	private Timer timer;// Swing Timer - Uses a separate timer thread for
-						// execution
-	private boolean[][] cells;
-//	private boolean[][] firstGeneration; // Automatically set the first time.
-	private int waitTime;// time to wait in milliseconds
+	private GenerationEngine generation;
+	private HashLife hashLife;// kept between jumps so its memoized results are reused
+	private Rule rule = Rule.LIFE;// every engine created is switched to it
+	private SteppingThread steppingThread;
+	private final Object stepLock = new Object();// guards generation, cells and generationNumber
+	private final TripleBuffer<GenerationFrame> frames = new TripleBuffer<GenerationFrame>(new GenerationFrame(),
+			new GenerationFrame(), new GenerationFrame());
+	private final AtomicBoolean framePending = new AtomicBoolean();// showLatestFrame() already queued
+	private final Runnable showLatestFrame = new Runnable() {
+		@Override
+		public void run() {
+			showLatestFrame();
+		}
+	};
+	private final int[] editedCell = new int[1];
+	private int skippedGenerations;// stepped since the last published frame
+	private long lastFrameTime;// when the stepping thread last published, in System.nanoTime()
+	private int rateGeneration;// generation and time the shown rate is measured from
+	private long rateTime;
+	private boolean[][] cells;// board handed to the engine on reset, open and jump
 	private boolean addingCells;// Make sure that removingCells is not true at
 	private boolean removingCells;// the same time as addingCells and
 									// vice-versa.
-	private int generationNumber;
+	private volatile int generationNumber;
+	private int startingGeneration = 1;// generation Start counts from, that of the snapshot opened last
 
 	// maintain ratio 1:3
 	public static final int ROWS = 60;
 	public static final int COLUMNS = 180;
 	public static final int ORIGIN_ROW = 20;
 	public static final int ORIGIN_COLUMN = 40;
+	private static final long FRAME_NANOS = 1000000000L / 60;
+	private static final long RATE_INTERVAL_NANOS = 500000000L;// how often rateLabel is recomputed
 	
+	/**
+	 * Threads used to step large grids in parallel row bands, override with
+	 * -Dlife.threads=N.
+	 */
+	public static final int STEPPING_THREADS = Integer.getInteger("life.threads",
+			Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Stepping engine, override with -Dlife.engine=classic|bit|frontier|sparse|block|vector|distributed|offheap|mapped.
+	 */
+	public static final EngineType ENGINE = EngineType.valueOf(System.getProperty("life.engine", "bit").toUpperCase());
+
+	/**
+	 * Pause once the board is extinct, still or oscillating, override with
+	 * -Dlife.autopause=false to keep running and only report it.
+	 */
+	public static final boolean AUTO_PAUSE = !"false".equals(System.getProperty("life.autopause"));
+
+	/**
+	 * Confirm every period the CycleDetector reports by stepping a copy of the
+	 * board, override with -Dlife.verifycycles=false to trust the hash alone.
+	 */
+	public static final boolean VERIFY_CYCLES = !"false".equals(System.getProperty("life.verifycycles"));
+
+	/**
+	 * Pattern library indexed by the PatternCatalog, override with
+	 * -Dlife.patterns=folder.
+	 */
+	public static final File PATTERN_LIBRARY = new File(System.getProperty("life.patterns", "Life Patterns"));
+
+	/**
+	 * Generations between two full boards in the history, override with
+	 * -Dlife.history.keyframes=K. Stepping back rebuilds at most K - 1 of them.
+	 */
+	public static final int HISTORY_KEYFRAME_INTERVAL = Integer.getInteger("life.history.keyframes", 64);
+
+	/**
+	 * Memory the history may use, override with -Dlife.history.bytes=N.
+	 */
+	public static final long HISTORY_BYTES = Long.getLong("life.history.bytes", 64L << 20);
+
+	/**
+	 * File the metrics are appended to, every METRICS_CSV_INTERVAL
+	 * milliseconds, set with -Dlife.metrics.csv=file. They are always
+	 * published over JMX.
+	 */
+	public static final String METRICS_CSV = System.getProperty("life.metrics.csv");
+
+	/**
+	 * Milliseconds between two lines of METRICS_CSV, override with
+	 * -Dlife.metrics.interval=N.
+	 */
+	public static final long METRICS_CSV_INTERVAL = Long.getLong("life.metrics.interval", 1000);
+
 	final JFileChooser fileDialog = new JFileChooser();
+	private final JFileChooser snapshotDialog = new JFileChooser();
+	private final ForkJoinPool steppingPool = new ForkJoinPool(STEPPING_THREADS);
+	private final PatternCatalog patternCatalog = new PatternCatalog(PATTERN_LIBRARY);
+	private final CycleDetector cycleDetector = new CycleDetector(ROWS, COLUMNS);
+	private final HistoryStore history = new HistoryStore(ROWS, COLUMNS, HISTORY_KEYFRAME_INTERVAL, HISTORY_BYTES);
+	private final SimulationMetrics metrics = new SimulationMetrics(ROWS, COLUMNS);
+	private volatile String stability;// what the CycleDetector found, null while the board keeps changing
+	private final JLabel patternDetails = new JLabel();// catalogue entry of the file selected in fileDialog
 
 	private enum SimulationState {
 		INITIAL, STARTABLE, RUNNING, PAUSED, RESUMED, SINGLESTEP
@@ -65,18 +170,42 @@ public class Simulation extends JComponent implements ActionListener {
 		this.game = game;
 		// Initialize variables
 		generationNumber = 1;
-		waitTime = 1000;
 		// Create Objects
 		backButton = JGradientButton.newInstance("Back");
 		cells = new boolean[ROWS][COLUMNS];
 		statusPanel = new JPanel();
+		historySlider = new JSlider(1, 1, 1);
 		speedPanel = new SpeedPanel();
 		generationLabel = new JLabel("Generation: " + generationNumber);
+		rateLabel = new JLabel();
 		grid = new Grid(cells);
-		generation = new Generation(cells);
-		timer = new Timer(waitTime, this);// this refers to the listener (here its the Simulation class
-											// implementing a Listener)
+		generation = ENGINE.create(cells, steppingPool, rule);
+		history.keyframe(generationNumber, generation);
+		metrics.reset(generation, generationNumber);
+		grid.setMetrics(metrics);
+		setUpMetrics();
+		hashLife = new HashLife();
+		steppingThread = new SteppingThread(new Runnable() {
+			@Override
+			public void run() {
+				stepAndPublish();
+			}
+		}, 1);
+		steppingThread.start();
+		Thread catalogScan = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				patternCatalog.scan();
+			}
+		}, "Pattern catalogue scan");
+		catalogScan.setDaemon(true);
+		catalogScan.start();
+		setUpFileDialog();
 		simulationControls = new SimulationControls();
+		// HashLife and the history only hold the window of a windowed engine
+		simulationControls.setJumpAvailable(!generation.isWindow());
+		simulationControls.setHistoryAvailable(!generation.isWindow());
+		historySlider.setEnabled(!generation.isWindow());
 		setSimulationState(SimulationState.INITIAL);
 
 		// Setting the Layout
@@ -89,16 +218,34 @@ public class Simulation extends JComponent implements ActionListener {
 				game.backButtonFromChild();
 			}
 		});
+		historySlider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				if (updatingHistorySlider || historySlider.getValue() == generationNumber)
+					return;
+				if (simulationState == SimulationState.RUNNING || simulationState == SimulationState.RESUMED)
+					setSimulationState(SimulationState.PAUSED);
+				if (!seekGeneration(historySlider.getValue())) {
+					updatingHistorySlider = true;
+					historySlider.setValue(generationNumber);
+					updatingHistorySlider = false;
+				}
+			}
+		});
 		speedPanel.setSpeedPanelListener(new SpeedPanelListener() {
 
 			@Override
 			public void speedSelected(int speed) {
 				if (speed != 0) {
-					waitTime = (int) 1000 / speed;
-					timer.setDelay(waitTime);
+					steppingThread.setGenerationsPerSecond(speed);
 				}
 			}
 
+			@Override
+			public void turboSelected() {
+				steppingThread.setTurbo(true);
+			}
+
 		});
 		simulationControls.setSimulationControlsListener(new SimulationControlsListener() {
 			// When re-assigning cells make sure to re-assign
@@ -106,9 +253,11 @@ public class Simulation extends JComponent implements ActionListener {
 			// to the same object at all times.
 			@Override
 			public void startButtonClicked() {
-				generationNumber = 1;
+				synchronized (stepLock) {
+					generationNumber = startingGeneration;
+					history.keyframe(generationNumber, generation);
+				}
 				setSimulationState(SimulationState.RUNNING);
-				timer.start();
 			}
 
 			@Override
@@ -128,45 +277,215 @@ public class Simulation extends JComponent implements ActionListener {
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
 					File file = fileDialog.getSelectedFile();
 					loadConfigFromFile(file);
-					generationNumber = 1;
-					generation = new Generation(cells);
-					grid.updateGrid(cells);
-					updateStatusLabel();
+					showLatestFrame();
 					simulationControls.setLoadFileConfiguration();
 				}
 			}
 
+			/**
+			 * Loads the pattern straight into the engine created by the reset,
+			 * from the catalogue index when the file is part of the library, and
+			 * switches to the rule the file names. Files without a rule keep the
+			 * current one. Snapshots restore their generation and rule too, and so
+			 * do MappedUniverse files, copied onto the board without parsing.
+			 */
 			private void loadConfigFromFile(File file) {
+				String fileRule;
 				try {
-					Scanner sc = new Scanner(file);
-					sc.nextLine();
-					int row = ORIGIN_ROW;
-					while (sc.hasNextLine()) {
-			            String line = sc.nextLine();
-			            for (int i = 0; i < line.length(); i++) {
-			            	if(line.charAt(i) == '*' || line.charAt(i) == 'O') 
-			            		cells[row][(ORIGIN_COLUMN + i) % COLUMNS] = true;
-			            	else
-			            		cells[row][(ORIGIN_COLUMN + i) % COLUMNS] = false;
+					if (Snapshot.isSnapshot(file)) {
+						loadSnapshot(Snapshot.read(file));
+						return;
+					}
+					if (MappedUniverse.isUniverse(file)) {
+						loadUniverse(file);
+						return;
+					}
+					PatternCatalog.Entry entry = patternCatalog.entryFor(file);
+					synchronized (stepLock) {
+						generationNumber = 1;
+						try {
+							if (entry != null) {
+								patternCatalog.load(entry, generation, ROWS, COLUMNS, ORIGIN_ROW, ORIGIN_COLUMN);
+								fileRule = entry.getRule();
+							} else {
+								fileRule = PatternLoader.load(file, generation, ROWS, COLUMNS, ORIGIN_ROW, ORIGIN_COLUMN)
+										.getRule();
+							}
+						} finally {
+							boardReplaced();
 						}
-			            row = (row + 1) % ROWS;
-			        }
-			        sc.close();
-				} catch (FileNotFoundException e) {
+					}
+				} catch (IOException e) {
 					JOptionPane.showMessageDialog(new JFrame(), "Couldn't read the file.", "Dialog",
 					        JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				if (fileRule == null)
+					return;
+				try {
+					setRule(Rule.parse(fileRule));
+				} catch (IllegalArgumentException e) {
+					JOptionPane.showMessageDialog(new JFrame(),
+							"The file's rule " + fileRule + " isn't supported, running it with " + rule + ".", "Dialog",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+
+			private void loadSnapshot(Snapshot snapshot) {
+				if (!fitsBoard("snapshot", snapshot.getRows(), snapshot.getColumns(), snapshot.getGeneration()))
+					return;
+				synchronized (stepLock) {
+					snapshot.copyInto(generation);
+					generationNumber = (int) snapshot.getGeneration();
+					startingGeneration = generationNumber;
+					boardReplaced();
+				}
+				try {
+					setRule(snapshot.getRule());
+				} catch (IllegalArgumentException e) {
+					JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "Dialog", JOptionPane.ERROR_MESSAGE);
 				}
 			}
 
+			/**
+			 * Restores a universe like a snapshot; the universe itself is not stepped.
+			 */
+			private void loadUniverse(File file) throws IOException {
+				MappedUniverse universe = MappedUniverse.open(file, null);
+				try {
+					if (fitsBoard("universe", universe.getRows(), universe.getColumns(), universe.getGeneration()))
+						loadSnapshot(Snapshot.capture(universe, ROWS, COLUMNS, universe.getGeneration()));
+				} finally {
+					universe.close();
+				}
+			}
+
+			/**
+			 * Whether a saved board fits this one, says why not if it does not.
+			 */
+			private boolean fitsBoard(String kind, int rows, int columns, long generation) {
+				if (rows == ROWS && columns == COLUMNS && generation <= Integer.MAX_VALUE)
+					return true;
+				JOptionPane.showMessageDialog(new JFrame(), "The " + kind + " is " + rows + " x " + columns
+						+ " cells, the board " + ROWS + " x " + COLUMNS + ".", "Dialog", JOptionPane.ERROR_MESSAGE);
+				return false;
+			}
+
+			/**
+			 * Copies the board under the step lock and writes it on a thread of
+			 * its own, so a running simulation only pauses for the copy.
+			 */
+			@Override
+			public void saveSnapshotButtonClicked() {
+				if (snapshotDialog.showSaveDialog(Simulation.this) != JFileChooser.APPROVE_OPTION)
+					return;
+				File chosen = snapshotDialog.getSelectedFile();
+				File file = chosen.getName().endsWith(Snapshot.EXTENSION) ? chosen
+						: new File(chosen.getPath() + Snapshot.EXTENSION);
+				Snapshot snapshot;
+				synchronized (stepLock) {
+					snapshot = Snapshot.capture(generation, ROWS, COLUMNS, generationNumber);
+				}
+				Thread writer = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							snapshot.write(file);
+						} catch (IOException e) {
+							SwingUtilities.invokeLater(new Runnable() {
+								@Override
+								public void run() {
+									JOptionPane.showMessageDialog(new JFrame(), "Couldn't save the snapshot.", "Dialog",
+											JOptionPane.ERROR_MESSAGE);
+								}
+							});
+						}
+					}
+				}, "Snapshot writer");
+				writer.start();
+			}
+
+			/**
+			 * Lets the user pick a preset rule or type any B/S rulestring.
+			 */
+			@Override
+			public void ruleButtonClicked() {
+				String[] rules = new String[Rule.PRESETS.length];
+				for (int i = 0; i < rules.length; i++) {
+					rules[i] = Rule.PRESETS[i][1];
+				}
+				JComboBox<String> ruleBox = new JComboBox<String>(rules);
+				ruleBox.setEditable(true);
+				ruleBox.setSelectedItem(rule.toString());
+				ruleBox.setRenderer(new DefaultListCellRenderer() {
+					@Override
+					public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+							boolean isSelected, boolean cellHasFocus) {
+						super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+						for (String[] preset : Rule.PRESETS) {
+							if (preset[1].equals(value))
+								setText(value + "  " + preset[0]);
+						}
+						return this;
+					}
+				});
+				int option = JOptionPane.showConfirmDialog(Simulation.this, ruleBox, "Rule",
+						JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+				if (option != JOptionPane.OK_OPTION || ruleBox.getSelectedItem() == null)
+					return;
+				try {
+					setRule(Rule.parse(ruleBox.getSelectedItem().toString()));
+				} catch (IllegalArgumentException e) {
+					JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "Dialog", JOptionPane.ERROR_MESSAGE);
+				}
+				showLatestFrame();
+			}
+
 			@Override
 			public void nextGenerationButtonClicked() {
 				setSimulationState(SimulationState.SINGLESTEP);
 				displayNextGeneration();
 			}
 
+			@Override
+			public void previousGenerationButtonClicked() {
+				setSimulationState(SimulationState.SINGLESTEP);
+				if (!seekGeneration(generationNumber - 1))
+					JOptionPane.showMessageDialog(new JFrame(),
+							"Generation " + (generationNumber - 1) + " is no longer in the history.", "Dialog",
+							JOptionPane.ERROR_MESSAGE);
+			}
+
+			@Override
+			public void jumpToGenerationButtonClicked() {
+				String input = JOptionPane.showInputDialog(Simulation.this, "Jump to generation:",
+						generationNumber + 1);
+				if (input == null)
+					return;
+				try {
+					int target = Integer.parseInt(input.trim());
+					if (target <= generationNumber) {
+						JOptionPane.showMessageDialog(new JFrame(), "Enter a generation after " + generationNumber + ".",
+								"Dialog", JOptionPane.ERROR_MESSAGE);
+						return;
+					}
+					setSimulationState(SimulationState.SINGLESTEP);
+					jumpToGeneration(target);
+				} catch (NumberFormatException e) {
+					JOptionPane.showMessageDialog(new JFrame(), "Not a generation number.", "Dialog",
+							JOptionPane.ERROR_MESSAGE);
+				} catch (IllegalArgumentException e) {
+					JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "Dialog", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+
 			@Override
 			public void clearButtonClicked() {
-				grid.clearCells();
+				synchronized (stepLock) {
+					generation.clear();
+					boardReplaced();
+				}
+				showLatestFrame();
 			}
 
 			@Override
@@ -184,11 +503,16 @@ public class Simulation extends JComponent implements ActionListener {
 			@Override
 			public void resetButtonClicked() {
 				setSimulationState(SimulationState.INITIAL);
-				generationNumber = 1;
-				cells = new boolean[ROWS][COLUMNS];
-				generation = new Generation(cells);
-				grid.updateGrid(cells);
-				updateStatusLabel();
+				synchronized (stepLock) {
+					generationNumber = 1;
+					startingGeneration = 1;
+					history.clear();
+					cells = new boolean[ROWS][COLUMNS];
+					generation.close();
+					generation = ENGINE.create(cells, steppingPool, rule);
+					boardReplaced();
+				}
+				showLatestFrame();
 			}
 		});
 		// Adding Mouse Listeners
@@ -200,17 +524,13 @@ public class Simulation extends JComponent implements ActionListener {
 				 * Toggles cells state
 				 */
 				super.mousePressed(e);
-				double width = (double) grid.getWidth() / cells[0].length;
-				double height = (double) grid.getHeight() / cells.length;
-				int row = (int) (e.getY() / height);
-				int column = (int) (e.getX() / width);
-				if (((row >= 0) && (row < cells.length)) && ((column >= 0) && (column < cells[0].length))) {
-					if (cells[row][column] == true)
-						cells[row][column] = false;
-					else
-						cells[row][column] = true;
+				if (SwingUtilities.isRightMouseButton(e))
+					return;// the right button pans the grid
+				int row = grid.rowAt(e.getY());
+				int column = grid.columnAt(e.getX());
+				if (((row >= 0) && (row < ROWS)) && ((column >= 0) && (column < COLUMNS))) {
+					editCell(row, column, null);
 				}
-				grid.repaint();
 				if (simulationState == SimulationState.INITIAL) {
 					setSimulationState(SimulationState.STARTABLE);
 				}
@@ -225,21 +545,20 @@ public class Simulation extends JComponent implements ActionListener {
 				 * Takes decision based on the boolean variables addingCells or removingCells
 				 * values
 				 */
-				double width = (double) grid.getWidth() / cells[0].length;
-				double height = (double) grid.getHeight() / cells.length;
-				int row = (int) (e.getY() / height);
-				int column = (int) (e.getX() / width);
+				if (SwingUtilities.isRightMouseButton(e))
+					return;// the right button pans the grid
+				int row = grid.rowAt(e.getY());
+				int column = grid.columnAt(e.getX());
 				if (addingCells) {
-					if (((row >= 0) && (row < cells.length)) && ((column >= 0) && (column < cells[0].length))) {
-						cells[row][column] = true;
+					if (((row >= 0) && (row < ROWS)) && ((column >= 0) && (column < COLUMNS))) {
+						editCell(row, column, true);
 					}
 				}
 				if (removingCells) {
-					if (((row >= 0) && (row < cells.length)) && ((column >= 0) && (column < cells[0].length))) {
-						cells[row][column] = false;
+					if (((row >= 0) && (row < ROWS)) && ((column >= 0) && (column < COLUMNS))) {
+						editCell(row, column, false);
 					}
 				}
-				grid.repaint();
 				if (simulationState == SimulationState.INITIAL) {
 					setSimulationState(SimulationState.STARTABLE);
 				}
@@ -275,16 +594,309 @@ public class Simulation extends JComponent implements ActionListener {
 			simulationControls.setSingleStepConfiguration();
 			break;
 		}
+		boolean running = simulationState == SimulationState.RUNNING || simulationState == SimulationState.RESUMED;
+		if (running && !steppingThread.isRunning()) {
+			rateGeneration = generationNumber;
+			rateTime = System.nanoTime();
+		}
+		if (!running)
+			rateLabel.setText("");
+		steppingThread.setRunning(running);
 	}
 
 	private void displayNextGeneration() {
-//		if (generationNumber == 1)
-//			firstGeneration = cells.clone();
-		generation = new Generation(cells.clone());
-		cells = generation.getNextGeneration().clone();
-		grid.updateGrid(cells);
+		synchronized (stepLock) {
+			stepGeneration();
+		}
+		showLatestFrame();
+	}
+
+	/**
+	 * Body of the stepping thread. A step that was already under way when the
+	 * simulation was paused or reset is dropped. In turbo mode generations are
+	 * stepped until a frame interval has passed and only the last one is
+	 * published; the lock is let go between steps so edits still get through.
+	 */
+	private void stepAndPublish() {
+		while (true) {
+			synchronized (stepLock) {
+				if (!steppingThread.isRunning())
+					return;
+				if (!steppingThread.isTurbo()) {
+					stepGeneration();
+					break;
+				}
+				advance();
+				long now = System.nanoTime();
+				if (now - lastFrameTime >= FRAME_NANOS || !steppingThread.isRunning()) {
+					lastFrameTime = now;
+					publishFrame(generation.getChangedCells(), generation.getChangedCount());
+					break;
+				}
+				skippedGenerations++;
+			}
+		}
+		if (framePending.compareAndSet(false, true))
+			SwingUtilities.invokeLater(showLatestFrame);
+	}
+
+	private void stepGeneration() {
+		advance();
+		publishFrame(generation.getChangedCells(), generation.getChangedCount());
+	}
+
+	/**
+	 * Steps the engine and feeds the CycleDetector, must hold stepLock. An
+	 * engine whose board is only a window onto its universe is not fed: a
+	 * window that repeats or empties says nothing about the rest of the
+	 * plane, and verify() could only step the window as a torus.
+	 */
+	private void advance() {
+		long start = System.nanoTime();
+		generation.step();
 		generationNumber++;
-		updateStatusLabel();
+		metrics.recordStep(generationNumber, generation, System.nanoTime() - start);
+		history.record(generationNumber, generation, generation.getChangedCells(), generation.getChangedCount());
+		if (generation.isWindow())
+			return;
+		if (generation.getChangedCells() == null) {
+			cycleDetector.reset(generation);// the hash cannot follow changes it is not told of
+			return;
+		}
+		int period = cycleDetector.step(generation.getChangedCells(), generation.getChangedCount());
+		if (period == 0 || stability != null)
+			return;
+		if (VERIFY_CYCLES && !cycleDetector.verify(generation, period))
+			return;// hash collision
+		if (cycleDetector.getHash() == 0) {
+			if (generation.getPopulation() != 0)
+				return;// a live board that happens to hash to 0 has not settled
+			stability = "extinct";
+		} else {
+			stability = period == 1 ? "still life" : "period " + period;
+		}
+		if (AUTO_PAUSE) {
+			steppingThread.setRunning(false);
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					if (simulationState == SimulationState.RUNNING || simulationState == SimulationState.RESUMED)
+						setSimulationState(SimulationState.PAUSED);
+				}
+			});
+		}
+	}
+
+	/**
+	 * For edits that replace the whole board, must hold stepLock.
+	 */
+	private void boardReplaced() {
+		history.keyframe(generationNumber, generation);
+		boardRestored();
+	}
+
+	/**
+	 * Starts tracking afresh on a board rebuilt from the history, which is
+	 * left as it is; must hold stepLock.
+	 */
+	private void boardRestored() {
+		cycleDetector.reset(generation);
+		metrics.reset(generation, generationNumber);
+		stability = null;
+		publishFrame(null, 0);
+	}
+
+	/**
+	 * Toggles the cell when alive is null.
+	 */
+	private void editCell(int row, int column, Boolean alive) {
+		synchronized (stepLock) {
+			boolean wasAlive = generation.isAlive(row, column);
+			if (alive == null)
+				alive = !wasAlive;
+			generation.setAlive(row, column, alive);
+			editedCell[0] = row * COLUMNS + column;
+			if (alive != wasAlive) {
+				cycleDetector.flip(editedCell[0]);
+				history.flip(generationNumber, editedCell[0]);
+				metrics.cellEdited(alive);
+				stability = null;
+			}
+			publishFrame(editedCell, 1);
+		}
+		showLatestFrame();
+	}
+
+	/**
+	 * Copies the engine into the back frame and publishes it, must hold
+	 * stepLock. changedCells covers only the latest change, so the whole grid
+	 * is repainted when generations were skipped or changedCells is null.
+	 */
+	private void publishFrame(int[] changedCells, int changedCount) {
+		GenerationFrame frame = frames.getBack();
+		frame.copyFrom(generation, generationNumber, skippedGenerations == 0 ? changedCells : null, changedCount);
+		skippedGenerations = 0;
+		if (frames.hasFresh())
+			frame.setFullRepaint(true);// the frame it replaces never reached the screen
+		frames.publish();
+	}
+
+	/**
+	 * Paints the most recently published frame, on the Event Dispatch Thread.
+	 */
+	private void showLatestFrame() {
+		framePending.set(false);
+		GenerationFrame frame = frames.acquire();
+		if (frame == null)
+			return;
+		frame.showOn(grid);
+		updateStatusLabel(frame.getGenerationNumber());
+		updatingHistorySlider = true;
+		historySlider.setMinimum(Math.min(history.getOldestGeneration(), frame.getGenerationNumber()));
+		historySlider.setMaximum(Math.max(history.getNewestGeneration(), frame.getGenerationNumber()));
+		historySlider.setValue(frame.getGenerationNumber());
+		updatingHistorySlider = false;
+		long now = System.nanoTime();
+		if (steppingThread.isRunning() && now - rateTime >= RATE_INTERVAL_NANOS) {
+			long rate = (frame.getGenerationNumber() - rateGeneration) * 1000000000L / (now - rateTime);
+			rateLabel.setText("  " + rate + " GPS");
+			rateGeneration = frame.getGenerationNumber();
+			rateTime = now;
+		}
+	}
+
+	/**
+	 * Rebuilds a generation from the history, returns false if it is no longer
+	 * retained. Later generations stay in the history until the board is
+	 * stepped or edited. The history of a windowed engine only covers the
+	 * window, so its universe is never rebuilt from it.
+	 */
+	private boolean seekGeneration(int target) {
+		synchronized (stepLock) {
+			if (generation.isWindow())
+				return false;
+			cells = generation.getCurrentGeneration();
+			if (!history.seek(target, cells))
+				return false;
+			generation.setCurrentGeneration(cells);
+			generationNumber = target;
+			boardRestored();
+		}
+		showLatestFrame();
+		return true;
+	}
+
+	/**
+	 * Switches the engine to the given rule from the next generation on. The
+	 * cycle history is forgotten, it was recorded under the old rule. Throws
+	 * IllegalArgumentException, leaving the rule alone, if the engine cannot
+	 * run it.
+	 */
+	private void setRule(Rule rule) {
+		synchronized (stepLock) {
+			generation.setRule(rule);
+			this.rule = rule;
+			boardReplaced();
+		}
+		simulationControls.setRule(rule);
+	}
+
+	/**
+	 * Skips ahead with HashLife instead of stepping generation by generation,
+	 * for as long as that provably gives what the torus would. HashLife runs
+	 * on an unbounded plane, which agrees with the torus while every live cell
+	 * keeps one dead cell between itself and the edge of the board. A pattern
+	 * grows by at most a cell a generation, so a bounding box d cells clear of
+	 * that border is safe for d + 1 generations, jumped a power of two at a
+	 * time so the memoized results are reused. Once the pattern reaches the
+	 * border the jump stops short and says so: stepping the rest here would
+	 * hold the Event Dispatch Thread and stepLock for as long as it takes,
+	 * while running on from there can be paused.
+	 */
+	private void jumpToGeneration(int target) {
+		long remaining = target - generationNumber;
+		int reached;
+		synchronized (stepLock) {
+			hashLife.setRule(rule);
+			cells = generation.getCurrentGeneration();
+			hashLife.setCells(cells);
+			long[] box = hashLife.getBoundingBox();
+			while (remaining > 0 && box != null) {
+				long margin = Math.min(Math.min(box[0], box[1]) - 1,
+						Math.min(ROWS - 2 - box[2], COLUMNS - 2 - box[3]));
+				if (margin < 0)
+					break;
+				long jump = Long.highestOneBit(Math.min(remaining, margin + 1));
+				hashLife.advanceBy(jump);
+				remaining -= jump;
+				box = hashLife.getBoundingBox();
+			}
+			if (box == null)
+				remaining = 0;// HashLife rules keep an empty board empty
+			reached = (int) (target - remaining);
+			if (reached > generationNumber) {
+				hashLife.copyInto(cells);
+				generation.setCurrentGeneration(cells);
+				generationNumber = reached;
+				boardReplaced();
+			}
+		}
+		showLatestFrame();
+		long[] box = hashLife.getBoundingBox();
+		generationLabel.setToolTipText("Population: " + generation.getPopulation()
+				+ (box == null ? "" : ", bounding box: (" + box[0] + ", " + box[1] + ") - (" + box[2] + ", " + box[3] + ")"));
+		if (remaining > 0)
+			JOptionPane.showMessageDialog(new JFrame(), "Stopped at generation " + reached
+					+ ": the pattern reaches the edge of the board, where jumping could differ from stepping."
+					+ " Run on from here to reach generation " + target + ".", "Dialog",
+					JOptionPane.INFORMATION_MESSAGE);
+	}
+
+	/**
+	 * Publishes the metrics over JMX and starts the CSV dump if one was asked
+	 * for. The simulation runs on without them if either fails.
+	 */
+	private void setUpMetrics() {
+		try {
+			metrics.register();
+		} catch (JMException e) {
+			JOptionPane.showMessageDialog(new JFrame(), "Couldn't publish the metrics over JMX: " + e.getMessage(),
+					"Dialog", JOptionPane.ERROR_MESSAGE);
+		}
+		if (METRICS_CSV == null)
+			return;
+		try {
+			metrics.startCsvDump(new File(METRICS_CSV), METRICS_CSV_INTERVAL);
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(new JFrame(), "Couldn't write the metrics to " + METRICS_CSV + ".", "Dialog",
+					JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * Opens the file dialog on the pattern library and shows the catalogue
+	 * details of the selected file beside it, without parsing the file.
+	 */
+	private void setUpFileDialog() {
+		if (PATTERN_LIBRARY.isDirectory())
+			fileDialog.setCurrentDirectory(PATTERN_LIBRARY);
+		patternDetails.setPreferredSize(new Dimension(180, 0));
+		patternDetails.setVerticalAlignment(SwingConstants.TOP);
+		fileDialog.setAccessory(patternDetails);
+		fileDialog.addPropertyChangeListener(JFileChooser.SELECTED_FILE_CHANGED_PROPERTY, new PropertyChangeListener() {
+			@Override
+			public void propertyChange(PropertyChangeEvent evt) {
+				File file = (File) evt.getNewValue();
+				PatternCatalog.Entry entry = file == null ? null : patternCatalog.peek(file);
+				if (entry == null) {
+					patternDetails.setText("");
+					return;
+				}
+				patternDetails.setText("<html><b>" + entry.getName() + "</b><br>" + entry.getCategory() + "<br>"
+						+ entry.getWidth() + " x " + entry.getHeight() + " cells<br>Population " + entry.getPopulation()
+						+ (entry.getRule() == null ? "" : "<br>Rule " + entry.getRule()) + "</html>");
+			}
+		});
 	}
 
 	private void setUpLayout() {
@@ -293,6 +905,8 @@ public class Simulation extends JComponent implements ActionListener {
 		generationLabel.setHorizontalAlignment(SwingConstants.LEFT);
 		generationLabel.setFont(new Font("", 15, 20));
 		statusPanel.add(generationLabel);
+		rateLabel.setFont(new Font("", 15, 15));
+		statusPanel.add(rateLabel);
 
 		GridBagConstraints gc = new GridBagConstraints();
 		gc.fill = GridBagConstraints.BOTH;
@@ -321,7 +935,7 @@ public class Simulation extends JComponent implements ActionListener {
 		gc.gridy = 2;
 		gc.gridx = 0;
 		gc.weighty = 0.2;
-		statusPanel.setPreferredSize(new Dimension((int) (getWidth() * 0.2), (int) (getHeight() * 0.04)));
+		statusPanel.setPreferredSize(new Dimension((int) (getWidth() * 0.3), (int) (getHeight() * 0.04)));
 		gc.insets = new Insets(0, 100, 0, 0);
 		gc.anchor = GridBagConstraints.WEST;
 		add(statusPanel, gc);
@@ -331,17 +945,21 @@ public class Simulation extends JComponent implements ActionListener {
 		speedPanel.setPreferredSize(new Dimension((int) (getWidth() * 0.8), (int) (getHeight() * 0.04)));
 		gc.anchor = GridBagConstraints.EAST;
 		add(speedPanel, gc);
+		// Fourth Row
+		gc.fill = GridBagConstraints.HORIZONTAL;
+		gc.gridy = 3;
+		gc.gridx = 0;
+		gc.weighty = 0.1;
+		gc.insets = new Insets(0, 0, 0, 0);
+		gc.anchor = GridBagConstraints.CENTER;
+		historySlider.setToolTipText("Scrub through the generations kept in the history");
+		add(historySlider, gc);
 
 	}
 
-	private void updateStatusLabel() {
-		generationLabel.setText("Generation: " + generationNumber);
-	}
-
-	@Override
-	public void actionPerformed(ActionEvent e) {
-		if (simulationState == SimulationState.RUNNING || simulationState == SimulationState.RESUMED) {
-			displayNextGeneration();
-		}
+	private void updateStatusLabel(int generationNumber) {
+		String stability = this.stability;
+		generationLabel.setText("Generation: " + generationNumber + (stability == null ? "" : " (" + stability + ")"));
+		generationLabel.setToolTipText(null);
 	}
 }
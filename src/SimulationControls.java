@@ -14,61 +14,105 @@ public class SimulationControls extends JPanel implements ActionListener {
 
 	private SimulationControlsListener simulationControlsListener;
 	private JGradientButton nextGenerationButton;
+	private JGradientButton previousGenerationButton;
+	private JGradientButton jumpToGenerationButton;
 	private JGradientButton pauseButton;
 	private JGradientButton resumeButton;
 	private JGradientButton addCellsButton;
 	private JGradientButton removeCellsButton;
 	private JGradientButton clearButton;
 	private JGradientButton openFileButton;
+	private JGradientButton saveSnapshotButton;
 	private JGradientButton startButton;
 	private JGradientButton resetButton;
+	private JGradientButton ruleButton;
+	private boolean jumpAvailable = true;// false for an engine that cannot jump
+	private boolean historyAvailable = true;// false for an engine whose history cannot be restored
 	
 	public SimulationControls() {
 		Color lightYellow = new Color(255, 255, 153);
 		setBackground(lightYellow);
-		setLayout(new GridLayout(3, 3));
+		setLayout(new GridLayout(4, 4));
 		// Creating the control buttons
 		nextGenerationButton = JGradientButton.newInstance("Next Generation");
+		previousGenerationButton = JGradientButton.newInstance("Previous Generation");
+		jumpToGenerationButton = JGradientButton.newInstance("Jump To Generation");
 		pauseButton = JGradientButton.newInstance("Pause");
 		resumeButton = JGradientButton.newInstance("Resume");
 		addCellsButton = JGradientButton.newInstance("Add Cells Mode");
 		removeCellsButton = JGradientButton.newInstance("Remove Cells Mode");
 		clearButton = JGradientButton.newInstance("Clear Button");
 		openFileButton = JGradientButton.newInstance("Open File");
+		saveSnapshotButton = JGradientButton.newInstance("Save Snapshot");
 		startButton = JGradientButton.newInstance("Start");
 		resetButton = JGradientButton.newInstance("Reset");
+		ruleButton = JGradientButton.newInstance("Rule: " + Rule.LIFE);
 		// Adding the control buttons to the panel
 		add(startButton);
 		add(openFileButton);
 		add(nextGenerationButton);
+		add(previousGenerationButton);
 		add(pauseButton);
 		add(resumeButton);
 		add(resetButton);
 		add(addCellsButton);
 		add(removeCellsButton);
 		add(clearButton);
+		add(jumpToGenerationButton);
+		add(ruleButton);
+		add(saveSnapshotButton);
 
 		// Adding action listeners to each control button
 		pauseButton.addActionListener(this);
 		nextGenerationButton.addActionListener(this);
+		previousGenerationButton.addActionListener(this);
+		jumpToGenerationButton.addActionListener(this);
 		resumeButton.addActionListener(this);
 		addCellsButton.addActionListener(this);
 		removeCellsButton.addActionListener(this);
 		clearButton.addActionListener(this);
 		openFileButton.addActionListener(this);
+		saveSnapshotButton.addActionListener(this);
 		startButton.addActionListener(this);
 		resetButton.addActionListener(this);
+		ruleButton.addActionListener(this);
 	}
 
 	public void setSimulationControlsListener(SimulationControlsListener simulationControlsListener) {
 		this.simulationControlsListener = simulationControlsListener;
 	}
 
+	/**
+	 * Whether Jump To Generation is offered whenever the simulation is
+	 * stopped.
+	 */
+	public void setJumpAvailable(boolean jumpAvailable) {
+		this.jumpAvailable = jumpAvailable;
+		if (!jumpAvailable)
+			jumpToGenerationButton.setEnabled(false);
+	}
+
+	/**
+	 * Whether Previous Generation is offered whenever the simulation is
+	 * stopped.
+	 */
+	public void setHistoryAvailable(boolean historyAvailable) {
+		this.historyAvailable = historyAvailable;
+		if (!historyAvailable)
+			previousGenerationButton.setEnabled(false);
+	}
+
+	public void setRule(Rule rule) {
+		ruleButton.setText("Rule: " + rule);
+	}
+
 	public void setInitialConfiguration() {
 		addCellsButton.setEnabled(true);
 		removeCellsButton.setEnabled(true);
 		clearButton.setEnabled(true);
 		nextGenerationButton.setEnabled(false);
+		previousGenerationButton.setEnabled(false);
+		jumpToGenerationButton.setEnabled(false);
 		pauseButton.setEnabled(false);
 		resumeButton.setEnabled(false);
 		openFileButton.setEnabled(true);
@@ -81,6 +125,8 @@ public class SimulationControls extends JPanel implements ActionListener {
 		removeCellsButton.setEnabled(true);
 		clearButton.setEnabled(true);
 		nextGenerationButton.setEnabled(true);
+		previousGenerationButton.setEnabled(historyAvailable);
+		jumpToGenerationButton.setEnabled(jumpAvailable);
 		pauseButton.setEnabled(true);
 		resumeButton.setEnabled(false);
 		openFileButton.setEnabled(true);
@@ -90,6 +136,8 @@ public class SimulationControls extends JPanel implements ActionListener {
 	
 	public void setStartableConfiguration() {
 		nextGenerationButton.setEnabled(true);
+		previousGenerationButton.setEnabled(historyAvailable);
+		jumpToGenerationButton.setEnabled(jumpAvailable);
 		startButton.setEnabled(true);
 	}
 	
@@ -99,6 +147,8 @@ public class SimulationControls extends JPanel implements ActionListener {
 		resetButton.setEnabled(true);
 		startButton.setEnabled(false);
 		nextGenerationButton.setEnabled(false);
+		previousGenerationButton.setEnabled(false);
+		jumpToGenerationButton.setEnabled(false);
 	}
 	
 	public void setSingleStepConfiguration() {
@@ -108,6 +158,8 @@ public class SimulationControls extends JPanel implements ActionListener {
 	
 	public void setPausedConfiguration() {
 		nextGenerationButton.setEnabled(true);
+		previousGenerationButton.setEnabled(historyAvailable);
+		jumpToGenerationButton.setEnabled(jumpAvailable);
 		pauseButton.setEnabled(false);
 		resumeButton.setEnabled(true);
 	}
@@ -115,6 +167,8 @@ public class SimulationControls extends JPanel implements ActionListener {
 	public void setResumedConfiguration() {
 		resumeButton.setEnabled(false);
 		nextGenerationButton.setEnabled(false);
+		previousGenerationButton.setEnabled(false);
+		jumpToGenerationButton.setEnabled(false);
 		pauseButton.setEnabled(true);
 	}
 	
@@ -126,6 +180,10 @@ public class SimulationControls extends JPanel implements ActionListener {
 			fireResumeButtonClicked();
 		else if (e.getSource().equals(nextGenerationButton))
 			fireNextGenerationButtonClicked();
+		else if (e.getSource().equals(previousGenerationButton))
+			firePreviousGenerationButtonClicked();
+		else if (e.getSource().equals(jumpToGenerationButton))
+			fireJumpToGenerationButtonClicked();
 		else if (e.getSource().equals(addCellsButton))
 			fireAddCellsButtonClicked();
 		else if (e.getSource().equals(removeCellsButton))
@@ -134,10 +192,19 @@ public class SimulationControls extends JPanel implements ActionListener {
 			fireClearButtonClicked();
 		else if (e.getSource().equals(openFileButton))
 			fireOpenFileButtonClicked();
+		else if (e.getSource().equals(saveSnapshotButton))
+			fireSaveSnapshotButtonClicked();
 		else if (e.getSource().equals(startButton))
 			fireStartButtonClicked();
 		else if (e.getSource().equals(resetButton))
 			fireResetButtonClicked();
+		else if (e.getSource().equals(ruleButton))
+			fireRuleButtonClicked();
+	}
+
+	private void fireRuleButtonClicked() {
+		if (simulationControlsListener != null)
+			simulationControlsListener.ruleButtonClicked();
 	}
 
 	private void fireResetButtonClicked() {
@@ -170,6 +237,16 @@ public class SimulationControls extends JPanel implements ActionListener {
 			simulationControlsListener.nextGenerationButtonClicked();
 	}
 
+	private void firePreviousGenerationButtonClicked() {
+		if (simulationControlsListener != null)
+			simulationControlsListener.previousGenerationButtonClicked();
+	}
+
+	private void fireJumpToGenerationButtonClicked() {
+		if (simulationControlsListener != null)
+			simulationControlsListener.jumpToGenerationButtonClicked();
+	}
+
 	private void fireResumeButtonClicked() {
 		if (simulationControlsListener != null)
 			simulationControlsListener.resumeButtonClicked();
@@ -184,4 +261,9 @@ public class SimulationControls extends JPanel implements ActionListener {
 		if (simulationControlsListener != null)
 			simulationControlsListener.openFileButtonClicked();
 	}
+
+	private void fireSaveSnapshotButtonClicked() {
+		if (simulationControlsListener != null)
+			simulationControlsListener.saveSnapshotButtonClicked();
+	}
 }
\ No newline at end of file
@@ -11,8 +11,16 @@ public interface SimulationControlsListener {
 
 	void openFileButtonClicked();
 
+	void saveSnapshotButtonClicked();
+
 	void nextGenerationButtonClicked();
 
+	void previousGenerationButtonClicked();
+
+	void jumpToGenerationButtonClicked();
+
+	void ruleButtonClicked();
+
 	void clearButtonClicked();
 
 	void removeCellsButtonClicked();
@@ -0,0 +1,262 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-generation figures of a running simulation: how long each step and each
+ * paint of the grid took, the population and the births and deaths of the
+ * latest generation, and the generations actually stepped per second. Steps
+ * and paints go into LatencyHistograms and the rest into plain fields, so
+ * recording never allocates or locks and costs next to nothing beside the
+ * step itself.
+ *
+ * register() publishes the figures as a standard MBean, to be watched in
+ * JConsole or VisualVM next to the garbage collector of the same JVM, and
+ * startCsvDump() appends a line of them, with the collector totals, to a file
+ * at a fixed interval.
+ *
+ * recordStep(), cellEdited() and reset() must be called by one thread at a
+ * time, the one holding the simulation's step lock; recordRender() by the
+ * Event Dispatch Thread. The getters may be called from anywhere.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+	public static final String OBJECT_NAME = "GameOfLife:type=SimulationMetrics";
+	private static final long RATE_INTERVAL_NANOS = 500000000L;// how often the rate is recomputed
+
+	private final int rows;
+	private final int columns;
+	private final LatencyHistogram stepLatency = new LatencyHistogram();
+	private final LatencyHistogram renderLatency = new LatencyHistogram();
+	private volatile int generation;
+	private volatile long population;
+	private volatile long births;// of the latest generation
+	private volatile long deaths;
+	private volatile long generationsPerSecond;
+	private volatile long lastStepTime;// System.nanoTime() of the latest step
+	private int rateGeneration;// generation and time the rate is measured from
+	private long rateTime;// 0 to start measuring afresh
+
+	public SimulationMetrics(int rows, int columns) {
+		this.rows = rows;
+		this.columns = columns;
+	}
+
+	/**
+	 * Registers this object with the platform MBean server.
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+	}
+
+	/**
+	 * Records a step of the engine to the given generation that took
+	 * stepNanos. Births and deaths are counted over the engine's changed
+	 * cells, and the population follows from them. When the engine did not
+	 * list them the population is counted instead, and only the net change
+	 * shows up as births or deaths.
+	 */
+	public void recordStep(int generation, GenerationEngine engine, long stepNanos) {
+		stepLatency.record(stepNanos);
+		int[] changedCells = engine.getChangedCells();
+		int changedCount = engine.getChangedCount();
+		if (changedCells == null) {
+			long grown = engine.getPopulation() - population;
+			births = Math.max(0, grown);
+			deaths = Math.max(0, -grown);
+			population += grown;
+		} else {
+			long born = 0;
+			for (int i = 0; i < changedCount; i++) {
+				int cell = changedCells[i];
+				if (engine.isAlive(cell / columns, cell % columns))
+					born++;
+			}
+			births = born;
+			deaths = changedCount - born;
+			population += born - (changedCount - born);
+		}
+		this.generation = generation;
+		long now = System.nanoTime();
+		if (rateTime == 0 || now - rateTime > 4 * RATE_INTERVAL_NANOS) {// first step after a pause
+			rateGeneration = generation;
+			rateTime = now;
+		} else if (now - rateTime >= RATE_INTERVAL_NANOS) {
+			generationsPerSecond = (generation - rateGeneration) * 1000000000L / (now - rateTime);
+			rateGeneration = generation;
+			rateTime = now;
+		}
+		lastStepTime = now;
+	}
+
+	public void recordRender(long renderNanos) {
+		renderLatency.record(renderNanos);
+	}
+
+	/**
+	 * Records a cell set alive or dead by hand.
+	 */
+	public void cellEdited(boolean alive) {
+		population += alive ? 1 : -1;
+	}
+
+	/**
+	 * Starts over on a board that was replaced as a whole, counting its
+	 * population afresh. Latencies are kept.
+	 */
+	public void reset(GenerationEngine engine, int generation) {
+		long alive = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				if (engine.isAlive(row, column))
+					alive++;
+			}
+		}
+		population = alive;
+		births = 0;
+		deaths = 0;
+		this.generation = generation;
+		rateTime = 0;
+	}
+
+	/**
+	 * Appends a line of figures to file every intervalMillis on a daemon
+	 * thread, after a header line when the file is new. Stops at the first
+	 * write that fails.
+	 */
+	public void startCsvDump(File file, long intervalMillis) throws IOException {
+		boolean created = !file.exists() || file.length() == 0;
+		BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		Thread dump = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (created) {
+						writer.write("time_ms,generation,gps,population,births,deaths,step_p50_us,step_p99_us,"
+								+ "step_max_us,render_p50_us,render_p99_us,render_max_us,gc_count,gc_ms\n");
+						writer.flush();
+					}
+					while (true) {
+						Thread.sleep(intervalMillis);
+						long gcCount = 0;
+						long gcMillis = 0;
+						for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+							gcCount += Math.max(0, collector.getCollectionCount());
+							gcMillis += Math.max(0, collector.getCollectionTime());
+						}
+						writer.write(System.currentTimeMillis() + "," + getGeneration() + "," + getGenerationsPerSecond()
+								+ "," + getPopulation() + "," + getBirths() + "," + getDeaths() + "," + getStepP50Micros()
+								+ "," + getStepP99Micros() + "," + getStepMaxMicros() + "," + getRenderP50Micros() + ","
+								+ getRenderP99Micros() + "," + getRenderMaxMicros() + "," + gcCount + "," + gcMillis + "\n");
+						writer.flush();
+					}
+				} catch (IOException e) {
+					System.err.println("Stopped writing metrics: " + e.getMessage());
+				} catch (InterruptedException e) {
+					// the JVM is going away
+				} finally {
+					try {
+						writer.close();
+					} catch (IOException e) {
+						// nothing more to do
+					}
+				}
+			}
+		}, "Metrics CSV dump");
+		dump.setDaemon(true);
+		dump.start();
+	}
+
+	@Override
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Generations stepped per second over the last half second or so, 0 when
+	 * nothing has been stepped for a while.
+	 */
+	@Override
+	public long getGenerationsPerSecond() {
+		return System.nanoTime() - lastStepTime > 4 * RATE_INTERVAL_NANOS ? 0 : generationsPerSecond;
+	}
+
+	@Override
+	public long getPopulation() {
+		return population;
+	}
+
+	@Override
+	public long getBirths() {
+		return births;
+	}
+
+	@Override
+	public long getDeaths() {
+		return deaths;
+	}
+
+	@Override
+	public long getStepCount() {
+		return stepLatency.getCount();
+	}
+
+	@Override
+	public long getStepMeanMicros() {
+		return stepLatency.getMean() / 1000;
+	}
+
+	@Override
+	public long getStepP50Micros() {
+		return stepLatency.getPercentile(0.5) / 1000;
+	}
+
+	@Override
+	public long getStepP99Micros() {
+		return stepLatency.getPercentile(0.99) / 1000;
+	}
+
+	@Override
+	public long getStepMaxMicros() {
+		return stepLatency.getMax() / 1000;
+	}
+
+	@Override
+	public long getRenderCount() {
+		return renderLatency.getCount();
+	}
+
+	@Override
+	public long getRenderMeanMicros() {
+		return renderLatency.getMean() / 1000;
+	}
+
+	@Override
+	public long getRenderP50Micros() {
+		return renderLatency.getPercentile(0.5) / 1000;
+	}
+
+	@Override
+	public long getRenderP99Micros() {
+		return renderLatency.getPercentile(0.99) / 1000;
+	}
+
+	@Override
+	public long getRenderMaxMicros() {
+		return renderLatency.getMax() / 1000;
+	}
+
+	@Override
+	public void resetLatencies() {
+		stepLatency.reset();
+		renderLatency.reset();
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * What SimulationMetrics shows over JMX, under the name
+ * SimulationMetrics.OBJECT_NAME. Durations are in microseconds; percentiles
+ * cover every generation or paint since the last resetLatencies().
+ */
+public interface SimulationMetricsMBean {
+	int getGeneration();
+
+	long getGenerationsPerSecond();
+
+	long getPopulation();
+
+	long getBirths();
+
+	long getDeaths();
+
+	long getStepCount();
+
+	long getStepMeanMicros();
+
+	long getStepP50Micros();
+
+	long getStepP99Micros();
+
+	long getStepMaxMicros();
+
+	long getRenderCount();
+
+	long getRenderMeanMicros();
+
+	long getRenderP50Micros();
+
+	long getRenderP99Micros();
+
+	long getRenderMaxMicros();
+
+	void resetLatencies();
+}
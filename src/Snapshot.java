@@ -0,0 +1,321 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The whole state of a run, board, rule and generation, in a compact binary
+ * file that Open File restores exactly where it left off.
+ *
+ * The file starts with MAGIC, VERSION, the rows, columns and generation, the
+ * rulestring and the number of rows per chunk. The board follows as chunks of
+ * bit-packed rows, laid out like BitGeneration (bit c % 64 of word c / 64 is
+ * column c), each deflated on its own and preceded by its compressed length.
+ * Deflate runs at BEST_SPEED: Life boards are mostly long runs of dead cells,
+ * which its LZ matching collapses to a few bytes each, so even the fastest
+ * level shrinks a sparse board far below its bit-packed size. Chunks are
+ * compressed and inflated in parallel on the common ForkJoinPool and the file
+ * goes through a FileChannel, written to a temporary file, forced to the disk
+ * and only then moved into place, so a checkpoint is never left half written,
+ * not even by a crash or a power cut.
+ *
+ * capture() copies the board, which is the only part that must happen while
+ * stepping is held off; write() can then run on any thread.
+ */
+public class Snapshot {
+	public static final String EXTENSION = ".snapshot";
+	private static final int MAGIC = 0x4C494653;// "LIFS"
+	private static final int VERSION = 1;
+	private static final int CHUNK_BYTES = 1 << 20;// uncompressed bytes per chunk, rounded down to whole rows
+
+	private final int rows;
+	private final int columns;
+	private final long generation;
+	private final Rule rule;
+	private final long[][] packedRows;
+
+	private Snapshot(int rows, int columns, long generation, Rule rule, long[][] packedRows) {
+		this.rows = rows;
+		this.columns = columns;
+		this.generation = generation;
+		this.rule = rule;
+		this.packedRows = packedRows;
+	}
+
+	/**
+	 * Copies the engine's board. The engine must not be stepped meanwhile.
+	 */
+	public static Snapshot capture(GenerationEngine engine, int rows, int columns, long generation) {
+		return new Snapshot(rows, columns, generation, engine.getRule(), pack(engine, rows, columns));
+	}
+
+	/**
+	 * A copy of the engine's board as bit-packed rows.
+	 */
+	static long[][] pack(GenerationEngine engine, int rows, int columns) {
+		int words = (columns + 63) >>> 6;
+		long[][] packedRows = new long[rows][];
+		if (engine instanceof BitGeneration) {
+			long[][] packed = ((BitGeneration) engine).getPackedGeneration();
+			for (int row = 0; row < rows; row++) {
+				packedRows[row] = packed[row].clone();
+			}
+		} else if (engine instanceof OffHeapGeneration) {
+			OffHeapBoard board = ((OffHeapGeneration) engine).getBoard();
+			for (int row = 0; row < rows; row++) {
+				packedRows[row] = new long[words];
+				board.readRow(row, packedRows[row]);
+			}
+		} else {
+			for (int row = 0; row < rows; row++) {
+				long[] packed = new long[words];
+				for (int column = 0; column < columns; column++) {
+					if (engine.isAlive(row, column))
+						packed[column >>> 6] |= 1L << column;
+				}
+				packedRows[row] = packed;
+			}
+		}
+		return packedRows;
+	}
+
+	/**
+	 * Whether the file starts with the snapshot magic number.
+	 */
+	public static boolean isSnapshot(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0)
+				;
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	public void write(File file) throws IOException {
+		int chunkRows = chunkRows();
+		byte[][] chunks = new byte[(rows + chunkRows - 1) / chunkRows][];
+		ForkJoinPool.commonPool().invoke(new Chunks(chunks, chunkRows, 0, chunks.length, false));
+		byte[] ruleBytes = rule.toString().getBytes(StandardCharsets.US_ASCII);
+		ByteBuffer header = ByteBuffer.allocate(30 + ruleBytes.length);
+		header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(columns).putLong(generation);
+		header.putShort((short) ruleBytes.length).put(ruleBytes).putInt(chunkRows);
+		header.flip();
+		File temporary = new File(file.getPath() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header);
+			ByteBuffer length = ByteBuffer.allocate(4);
+			for (byte[] chunk : chunks) {
+				length.clear();
+				length.putInt(chunk.length).flip();
+				writeFully(channel, length);
+				writeFully(channel, ByteBuffer.wrap(chunk));
+			}
+			// Otherwise the move could reach the disk before the data it names
+			channel.force(true);
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private int chunkRows() {
+		int words = (columns + 63) >>> 6;
+		return Math.max(1, CHUNK_BYTES / (words * 8));
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Chunks [fromChunk, toChunk) deflated from or inflated into packedRows,
+	 * halved down to single chunks. An inflated chunk that does not hold
+	 * exactly its rows is left null in chunks.
+	 */
+	private class Chunks extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final byte[][] chunks;
+		private final int chunkRows;
+		private final int fromChunk;
+		private final int toChunk;
+		private final boolean inflating;
+
+		Chunks(byte[][] chunks, int chunkRows, int fromChunk, int toChunk, boolean inflating) {
+			this.chunks = chunks;
+			this.chunkRows = chunkRows;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.inflating = inflating;
+		}
+
+		@Override
+		protected void compute() {
+			if (toChunk - fromChunk > 1) {
+				int middleChunk = (fromChunk + toChunk) >>> 1;
+				invokeAll(new Chunks(chunks, chunkRows, fromChunk, middleChunk, inflating),
+						new Chunks(chunks, chunkRows, middleChunk, toChunk, inflating));
+				return;
+			}
+			int fromRow = fromChunk * chunkRows;
+			int toRow = Math.min(rows, fromRow + chunkRows);
+			if (inflating) {
+				if (!inflate(chunks[fromChunk], fromRow, toRow))
+					chunks[fromChunk] = null;
+			} else {
+				chunks[fromChunk] = deflate(fromRow, toRow);
+			}
+		}
+	}
+
+	private byte[] deflate(int fromRow, int toRow) {
+		int words = (columns + 63) >>> 6;
+		ByteBuffer raw = ByteBuffer.allocate((toRow - fromRow) * words * 8);
+		for (int row = fromRow; row < toRow; row++) {
+			raw.asLongBuffer().put(packedRows[row]);
+			raw.position(raw.position() + words * 8);
+		}
+		raw.flip();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(raw);
+		deflater.finish();
+		byte[] compressed = new byte[64 + raw.limit() / 8];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length)
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		deflater.end();
+		return Arrays.copyOf(compressed, length);
+	}
+
+	public static Snapshot read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = readFully(channel, 26);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a snapshot");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException(file + ": unknown snapshot version " + version);
+			int rows = header.getInt();
+			int columns = header.getInt();
+			long generation = header.getLong();
+			int ruleLength = header.getShort();
+			if (rows <= 0 || columns <= 0 || ruleLength < 0)
+				throw new IOException(file + ": corrupt snapshot header");
+			String ruleText = new String(readFully(channel, ruleLength).array(), StandardCharsets.US_ASCII);
+			int chunkRows = readFully(channel, 4).getInt();
+			Rule rule;
+			try {
+				rule = Rule.parse(ruleText);
+			} catch (IllegalArgumentException e) {
+				throw new IOException(file + ": " + e.getMessage());
+			}
+			if (chunkRows <= 0)
+				throw new IOException(file + ": corrupt snapshot header");
+			byte[][] chunks = new byte[(rows + chunkRows - 1) / chunkRows][];
+			for (int chunk = 0; chunk < chunks.length; chunk++) {
+				int length = readFully(channel, 4).getInt();
+				if (length < 0)
+					throw new IOException(file + ": corrupt snapshot");
+				chunks[chunk] = readFully(channel, length).array();
+			}
+			Snapshot snapshot = new Snapshot(rows, columns, generation, rule, new long[rows][(columns + 63) >>> 6]);
+			ForkJoinPool.commonPool().invoke(snapshot.new Chunks(chunks, chunkRows, 0, chunks.length, true));
+			for (byte[] chunk : chunks) {
+				if (chunk == null)
+					throw new IOException(file + ": corrupt snapshot");
+			}
+			return snapshot;
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				throw new IOException("Snapshot ends early");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Inflates one chunk into its rows, returns false if it does not hold
+	 * exactly those rows.
+	 */
+	private boolean inflate(byte[] chunk, int fromRow, int toRow) {
+		int words = packedRows[0].length;
+		ByteBuffer raw = ByteBuffer.allocate((toRow - fromRow) * words * 8);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(chunk);
+			while (raw.hasRemaining() && !inflater.finished()) {
+				if (inflater.inflate(raw) == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					return false;
+			}
+			if (raw.hasRemaining())
+				return false;
+		} catch (DataFormatException e) {
+			return false;
+		} finally {
+			inflater.end();
+		}
+		raw.flip();
+		for (int row = fromRow; row < toRow; row++) {
+			raw.asLongBuffer().get(packedRows[row]);
+			raw.position(raw.position() + words * 8);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the live cells into sink, which is expected to be clear.
+	 */
+	public void copyInto(CellSink sink) {
+		for (int row = 0; row < rows; row++) {
+			long[] packed = packedRows[row];
+			for (int word = 0; word < packed.length; word++) {
+				long bits = packed[word];
+				while (bits != 0) {
+					int column = (word << 6) + Long.numberOfTrailingZeros(bits);
+					if (column < columns)
+						sink.setAlive(row, column, true);
+					bits &= bits - 1;
+				}
+			}
+		}
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	public Rule getRule() {
+		return rule;
+	}
+}
@@ -0,0 +1,368 @@
+import java.util.Arrays;
+
+/**
+ * Unbounded plane made of 64x64 bit tiles. Only tiles holding live cells are
+ * kept, in a TileMap keyed by the tile coordinates packed into one long; a
+ * tile is allocated when a cell is born in it and dropped as soon as it
+ * empties, so memory follows the live area and a glider can travel
+ * arbitrarily far. Stepping fills the map of two generations ago again, with
+ * the arrays of its old tiles, so a run whose live area stays the same size
+ * allocates nothing.
+ *
+ * Each tile row is a single long, bit c holding column c of the tile, and is
+ * stepped with the same full-adder kernels as BitGeneration. Rules with B0
+ * are refused, they would bring the whole empty plane to life. Simulation still
+ * works on a ROWS x COLUMNS board: that board is a window onto the plane
+ * starting at (viewRow, viewColumn), refreshed when it is asked for.
+ */
+public class SparseUniverse implements GenerationEngine {
+	private static final int TILE_SIZE = 64;
+	private static final long[] EMPTY_TILE = new long[TILE_SIZE];
+
+	private TileMap tiles = new TileMap();
+	private TileMap previousTiles = new TileMap();// tiles before the last step
+	private final TileMap candidates = new TileMap();// keys of the tiles the next step visits
+	private long[][] spareTiles = new long[16][];// arrays of dropped tiles, for reuse
+	private int spareCount;
+	private boolean[][] cells;// window onto the plane
+	private boolean viewStale;// stepped without refreshing cells
+	private int[] changedCells;// allocated on first use
+	private int changedCount;
+	private boolean changesStale;// changedCells not yet extracted from the last step
+	private long viewRow;
+	private long viewColumn;
+	private Rule rule = Rule.LIFE;
+	private long[] ruleMasks;// null for Life, which has its own kernel
+
+	public SparseUniverse(boolean[][] cells) {
+		setCurrentGeneration(cells);
+	}
+
+	private static long key(int tileRow, int tileColumn) {
+		return ((long) tileRow << 32) | (tileColumn & 0xFFFFFFFFL);
+	}
+
+	private static int tileRow(long key) {
+		return (int) (key >> 32);
+	}
+
+	private static int tileColumn(long key) {
+		return (int) key;
+	}
+
+	@Override
+	public void step() {
+		// Only live tiles and the tiles bordering them can hold cells next generation
+		candidates.clear();
+		for (int slot = 0; slot < tiles.getCapacity(); slot++) {
+			if (tiles.getValue(slot) == null)
+				continue;
+			long key = tiles.getKey(slot);
+			int tileRow = tileRow(key);
+			int tileColumn = tileColumn(key);
+			for (int dRow = -1; dRow <= 1; dRow++) {
+				for (int dColumn = -1; dColumn <= 1; dColumn++) {
+					candidates.put(key(tileRow + dRow, tileColumn + dColumn), EMPTY_TILE);
+				}
+			}
+		}
+		TileMap next = previousTiles;
+		recycle(next);
+		for (int slot = 0; slot < candidates.getCapacity(); slot++) {
+			if (candidates.getValue(slot) == null)
+				continue;
+			long key = candidates.getKey(slot);
+			long[] tile = stepTile(tileRow(key), tileColumn(key));
+			if (tile != null)
+				next.put(key, tile);
+		}
+		previousTiles = tiles;
+		tiles = next;
+		viewStale = true;
+		changesStale = true;
+	}
+
+	/**
+	 * Next generation of one tile, or null when it would be empty.
+	 */
+	private long[] stepTile(int tileRow, int tileColumn) {
+		long[] north = tile(tileRow - 1, tileColumn);
+		long[] south = tile(tileRow + 1, tileColumn);
+		long[] west = tile(tileRow, tileColumn - 1);
+		long[] east = tile(tileRow, tileColumn + 1);
+		long[] center = tile(tileRow, tileColumn);
+		long[] northWest = tile(tileRow - 1, tileColumn - 1);
+		long[] northEast = tile(tileRow - 1, tileColumn + 1);
+		long[] southWest = tile(tileRow + 1, tileColumn - 1);
+		long[] southEast = tile(tileRow + 1, tileColumn + 1);
+		long[] result = null;
+		for (int row = 0; row < TILE_SIZE; row++) {
+			long up, upWest, upEast;
+			if (row == 0) {
+				up = north[TILE_SIZE - 1];
+				upWest = northWest[TILE_SIZE - 1];
+				upEast = northEast[TILE_SIZE - 1];
+			} else {
+				up = center[row - 1];
+				upWest = west[row - 1];
+				upEast = east[row - 1];
+			}
+			long down, downWest, downEast;
+			if (row == TILE_SIZE - 1) {
+				down = south[0];
+				downWest = southWest[0];
+				downEast = southEast[0];
+			} else {
+				down = center[row + 1];
+				downWest = west[row + 1];
+				downEast = east[row + 1];
+			}
+			long cell = center[row];
+			long word;
+			if (ruleMasks == null)
+				word = BitGeneration.nextWord(shiftWest(up, upWest), up, shiftEast(up, upEast),
+						shiftWest(cell, west[row]), cell, shiftEast(cell, east[row]), shiftWest(down, downWest), down,
+						shiftEast(down, downEast));
+			else
+				word = BitGeneration.nextWord(ruleMasks, shiftWest(up, upWest), up, shiftEast(up, upEast),
+						shiftWest(cell, west[row]), cell, shiftEast(cell, east[row]), shiftWest(down, downWest), down,
+						shiftEast(down, downEast));
+			if (word != 0) {
+				if (result == null)
+					result = newTile();
+				result[row] = word;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * An empty tile, reusing a dropped one if there is any.
+	 */
+	private long[] newTile() {
+		if (spareCount == 0)
+			return new long[TILE_SIZE];
+		long[] tile = spareTiles[--spareCount];
+		Arrays.fill(tile, 0);
+		return tile;
+	}
+
+	/**
+	 * Empties the map, keeping its tiles for newTile().
+	 */
+	private void recycle(TileMap map) {
+		for (int slot = 0; slot < map.getCapacity(); slot++) {
+			long[] tile = map.getValue(slot);
+			if (tile == null)
+				continue;
+			if (spareCount == spareTiles.length)
+				spareTiles = Arrays.copyOf(spareTiles, spareCount * 2);
+			spareTiles[spareCount++] = tile;
+		}
+		map.clear();
+	}
+
+	private static long shiftWest(long row, long westRow) {
+		return (row << 1) | (westRow >>> 63);
+	}
+
+	private static long shiftEast(long row, long eastRow) {
+		return (row >>> 1) | (eastRow << 63);
+	}
+
+	private long[] tile(int tileRow, int tileColumn) {
+		long[] tile = tiles.get(key(tileRow, tileColumn));
+		return tile == null ? EMPTY_TILE : tile;
+	}
+
+	@Override
+	public boolean isAlive(int row, int column) {
+		return isAlive(viewRow + row, viewColumn + column);
+	}
+
+	@Override
+	public void setAlive(int row, int column, boolean alive) {
+		setAlive(viewRow + row, viewColumn + column, alive);
+		if (!viewStale)
+			cells[row][column] = alive;
+	}
+
+	public boolean isAlive(long row, long column) {
+		long[] tile = tiles.get(key((int) (row >> 6), (int) (column >> 6)));
+		return tile != null && (tile[(int) (row & 63)] & (1L << column)) != 0;
+	}
+
+	public void setAlive(long row, long column, boolean alive) {
+		long key = key((int) (row >> 6), (int) (column >> 6));
+		long[] tile = tiles.get(key);
+		if (tile == null) {
+			if (!alive)
+				return;
+			tile = newTile();
+			tiles.put(key, tile);
+		}
+		if (alive) {
+			tile[(int) (row & 63)] |= 1L << column;
+		} else {
+			tile[(int) (row & 63)] &= ~(1L << column);
+			if (isEmpty(tile))
+				tiles.remove(key);
+		}
+	}
+
+	private static boolean isEmpty(long[] tile) {
+		for (long word : tile) {
+			if (word != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public long getPopulation() {
+		long population = 0;
+		for (int slot = 0; slot < tiles.getCapacity(); slot++) {
+			long[] tile = tiles.getValue(slot);
+			if (tile == null)
+				continue;
+			for (long word : tile) {
+				population += Long.bitCount(word);
+			}
+		}
+		return population;
+	}
+
+	/**
+	 * Kills every cell of the plane, not only those of the window.
+	 */
+	@Override
+	public void clear() {
+		recycle(tiles);
+		for (boolean[] row : cells) {
+			Arrays.fill(row, false);
+		}
+		viewStale = false;
+		changedCount = 0;
+		changesStale = false;
+	}
+
+	/**
+	 * Cells of the window flipped by the last step, found by comparing the
+	 * tiles under the window before and after it.
+	 */
+	@Override
+	public int[] getChangedCells() {
+		if (changesStale)
+			extractChanges();
+		return changedCells;
+	}
+
+	@Override
+	public int getChangedCount() {
+		if (changesStale)
+			extractChanges();
+		return changedCount;
+	}
+
+	private void extractChanges() {
+		int rows = cells.length;
+		int columns = cells[0].length;
+		if (changedCells == null)
+			changedCells = new int[rows * columns];
+		changedCount = 0;
+		for (long tileRow = viewRow >> 6; tileRow <= (viewRow + rows - 1) >> 6; tileRow++) {
+			for (long tileColumn = viewColumn >> 6; tileColumn <= (viewColumn + columns - 1) >> 6; tileColumn++) {
+				long key = key((int) tileRow, (int) tileColumn);
+				long[] before = previousTiles.get(key);
+				long[] after = tiles.get(key);
+				if (before == null && after == null)
+					continue;
+				for (int row = 0; row < TILE_SIZE; row++) {
+					long flipped = (before == null ? 0 : before[row]) ^ (after == null ? 0 : after[row]);
+					long windowRow = (tileRow << 6) + row - viewRow;
+					while (flipped != 0 && windowRow >= 0 && windowRow < rows) {
+						long windowColumn = (tileColumn << 6) + Long.numberOfTrailingZeros(flipped) - viewColumn;
+						if (windowColumn >= 0 && windowColumn < columns)
+							changedCells[changedCount++] = (int) (windowRow * columns + windowColumn);
+						flipped &= flipped - 1;
+					}
+				}
+			}
+		}
+		changesStale = false;
+	}
+
+	@Override
+	public Rule getRule() {
+		return rule;
+	}
+
+	@Override
+	public void setRule(Rule rule) {
+		if (rule.isBirthOnZero())
+			throw new IllegalArgumentException(rule + " gives birth on empty space, the sparse plane cannot run it");
+		this.rule = rule;
+		ruleMasks = rule.isLife() ? null : rule.getWordMasks();
+	}
+
+	@Override
+	public boolean isWindow() {
+		return true;
+	}
+
+	public int getTileCount() {
+		return tiles.size();
+	}
+
+	/**
+	 * Moves the window shown by getCurrentGeneration() to start at the given
+	 * cell of the plane.
+	 */
+	public void setView(long row, long column) {
+		viewRow = row;
+		viewColumn = column;
+		refreshView();
+		changedCount = 0;
+		changesStale = false;
+	}
+
+	private void refreshView() {
+		for (int row = 0; row < cells.length; row++) {
+			for (int column = 0; column < cells[0].length; column++) {
+				cells[row][column] = isAlive(viewRow + row, viewColumn + column);
+			}
+		}
+		viewStale = false;
+	}
+
+	@Override
+	public boolean[][] getCurrentGeneration() {
+		if (viewStale)
+			refreshView();
+		return cells;
+	}
+
+	/**
+	 * Writes the given window into the plane at the current view position.
+	 * Cells outside the window are left alone.
+	 */
+	@Override
+	public void setCurrentGeneration(boolean[][] currentGeneration) {
+		cells = currentGeneration;
+		viewStale = false;
+		changedCount = 0;
+		changesStale = false;
+		for (int row = 0; row < cells.length; row++) {
+			for (int column = 0; column < cells[0].length; column++) {
+				setAlive(viewRow + row, viewColumn + column, cells[row][column]);
+			}
+		}
+	}
+
+	@Override
+	public boolean[][] getNextGeneration() {
+		step();
+		refreshView();
+		return cells;
+	}
+}
@@ -37,6 +37,7 @@ public class SpeedPanel extends JPanel {
 		speedModel.addElement("High");//High = 8 generation per second - waitTime = 125ms
 		speedModel.addElement("Extreme");//Extreme = 168 generation per second - waitTime = 62ms
 		speedModel.addElement("Custom");//Set Custom value
+		speedModel.addElement("Turbo");//As fast as possible, the display samples about 60 frames per second
 		speedCombo.setModel(speedModel);
 		speedCombo.setEditable(false);
 		speedCombo.setSelectedIndex(0);
@@ -65,8 +66,15 @@ public class SpeedPanel extends JPanel {
 				case "Custom":
 					speedSpinner.setEnabled(true);
 					break;
+				case "Turbo":
+					speedSpinner.setEnabled(false);
+					fireTurboSelected();
+					return;
 				}
-				speedSpinner.setValue(speed);//speedSpinner will fire the selected speed to SimulationPanel
+				if (speed == (int) speedSpinner.getValue())
+					fireSpeedSelected(speed);// leaving Turbo for the speed already set
+				else
+					speedSpinner.setValue(speed);//speedSpinner will fire the selected speed to SimulationPanel
 			}
 		});
 		speedSpinner.addChangeListener(new ChangeListener(){
@@ -85,6 +93,10 @@ public class SpeedPanel extends JPanel {
 	private void fireSpeedSelected(int speed) {
 		speedPanelListener.speedSelected(speed);
 	}
+
+	private void fireTurboSelected() {
+		speedPanelListener.turboSelected();
+	}
 	
 	public void setSpeedPanelListener(SpeedPanelListener speedPanelListener) {
 		this.speedPanelListener = speedPanelListener;
@@ -1,4 +1,10 @@
 
 public interface SpeedPanelListener {
 	public void speedSelected(int speed);
+
+	/**
+	 * Run as fast as the engine goes, showing only as many generations as the
+	 * display can keep up with.
+	 */
+	public void turboSelected();
 }
@@ -0,0 +1,71 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Daemon thread that runs the step task at a steady rate off the Event
+ * Dispatch Thread. Between steps it parks with LockSupport.parkNanos until the
+ * next deadline; deadlines advance by one period from the previous one, so
+ * the rate does not drift with the cost of a step, and after falling behind it
+ * restarts from now rather than bursting to catch up. In turbo mode the task
+ * is run back to back without parking at all.
+ */
+public class SteppingThread extends Thread {
+	private final Runnable step;
+	private volatile boolean running;
+	private volatile long periodNanos;
+	private volatile boolean turbo;
+
+	public SteppingThread(Runnable step, int generationsPerSecond) {
+		super("Simulation stepping");
+		this.step = step;
+		setDaemon(true);
+		setGenerationsPerSecond(generationsPerSecond);
+	}
+
+	public void setRunning(boolean running) {
+		this.running = running;
+		LockSupport.unpark(this);
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public void setGenerationsPerSecond(int generationsPerSecond) {
+		periodNanos = 1000000000L / generationsPerSecond;
+		turbo = false;
+		LockSupport.unpark(this);
+	}
+
+	public void setTurbo(boolean turbo) {
+		this.turbo = turbo;
+		LockSupport.unpark(this);
+	}
+
+	public boolean isTurbo() {
+		return turbo;
+	}
+
+	@Override
+	public void run() {
+		long deadline = System.nanoTime();
+		while (true) {
+			if (!running) {
+				LockSupport.park(this);
+				deadline = System.nanoTime();
+				continue;
+			}
+			step.run();
+			if (turbo) {
+				deadline = System.nanoTime();
+				continue;
+			}
+			long period = periodNanos;
+			deadline += period;
+			long now = System.nanoTime();
+			if (now - deadline > period)
+				deadline = now;
+			while (running && !turbo && period == periodNanos && (now = System.nanoTime()) - deadline < 0)
+				LockSupport.parkNanos(this, deadline - now);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+/**
+ * Hash map from tile keys, a tile row and column packed into one long, to the
+ * tiles of SparseUniverse. Keys stay primitive and there is no entry object
+ * per tile, and clear() keeps the arrays, so a map refilled every step stops
+ * allocating once it has grown to the live area.
+ *
+ * Open addressing with linear probing, kept at most half full; remove()
+ * shifts the entries after the removed one back instead of leaving a marker.
+ * Entries are visited by slot, from 0 to getCapacity() - 1, skipping the
+ * slots whose getValue() is null.
+ */
+public class TileMap {
+	private long[] keys;
+	private long[][] values;// null for a free slot
+	private int size;
+	private int shift;// 64 - log2(capacity)
+
+	public TileMap() {
+		keys = new long[64];
+		values = new long[64][];
+		shift = 64 - 6;
+	}
+
+	private int home(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	public long getKey(int slot) {
+		return keys[slot];
+	}
+
+	public long[] getValue(int slot) {
+		return values[slot];
+	}
+
+	/**
+	 * The tile under the key, null if there is none.
+	 */
+	public long[] get(long key) {
+		int mask = keys.length - 1;
+		for (int slot = home(key); values[slot] != null; slot = (slot + 1) & mask) {
+			if (keys[slot] == key)
+				return values[slot];
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps the key to value, which must not be null.
+	 */
+	public void put(long key, long[] value) {
+		int mask = keys.length - 1;
+		int slot = home(key);
+		for (; values[slot] != null; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > keys.length >>> 1)
+			grow();
+	}
+
+	/**
+	 * Removes the key, returns the tile it had or null.
+	 */
+	public long[] remove(long key) {
+		int mask = keys.length - 1;
+		int slot = home(key);
+		while (values[slot] != null && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		long[] removed = values[slot];
+		if (removed == null)
+			return null;
+		int free = slot;
+		for (int next = (free + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+			// move the entry back unless that would put it before its home slot
+			if (((next - home(keys[next])) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				values[free] = values[next];
+				free = next;
+			}
+		}
+		values[free] = null;
+		size--;
+		return removed;
+	}
+
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[][] oldValues = values;
+		keys = new long[oldKeys.length << 1];
+		values = new long[oldKeys.length << 1][];
+		shift--;
+		size = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldValues[slot] != null)
+				put(oldKeys[slot], oldValues[slot]);
+		}
+	}
+}
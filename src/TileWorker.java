@@ -0,0 +1,351 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * One process of a DistributedUniverse: owns the rectangle [firstRow, endRow)
+ * x [firstColumn, endColumn) of the torus and steps it on commands from the
+ * coordinator, started as
+ *
+ * <pre>
+ * java TileWorker coordinatorPort index
+ * </pre>
+ *
+ * The tile is kept with a ghost border haloWidth cells wide on every side.
+ * After a halo exchange the border holds the neighbouring tiles' edges, and
+ * each generation stepped without exchanging uses up one cell of it, so the
+ * workers exchange once every haloWidth generations. An exchange goes over
+ * four TCP links: the tile's edge columns are swapped with the east and west
+ * neighbours first, then its edge rows, ghost columns included, with the
+ * north and south neighbours, which brings the diagonal corners along. Every
+ * worker connects to its east and south neighbours and accepts the
+ * connections of its west and north ones, which on a torus one or two tiles
+ * across may well be itself.
+ *
+ * Cells are stepped as in Generation, through the rule's 512-entry table
+ * with the 3x3 neighbourhood slid along each row, so the results are bit for
+ * bit those of Generation on the whole board. The worker exits when the
+ * coordinator goes away.
+ */
+public class TileWorker {
+	static final byte LOAD = 1;
+	static final byte STEP = 2;
+	static final byte EDIT = 3;
+	static final byte CELLS = 4;
+	static final byte CHANGES = 5;
+	static final byte POPULATION = 6;
+	static final byte RULE = 7;
+	static final byte QUIT = 8;
+	static final byte DONE = 0;// reply to a command that returns nothing
+	private static final byte FROM_WEST = 0;// first byte on a peer link, who is connecting
+	private static final byte FROM_NORTH = 1;
+
+	private final int columns;// of the whole torus
+	private final int firstRow;
+	private final int firstColumn;
+	private final int height;
+	private final int width;
+	private final int halo;
+	private boolean[] table;
+	private boolean[][] current;// height + 2 * halo rows of width + 2 * halo cells
+	private boolean[][] next;
+	private int validHalo;// ghost cells still current, 0 when an exchange is due
+	private boolean stepped;// next holds the generation before current
+	private final ExecutorService sender = Executors.newSingleThreadExecutor();
+	private Link east;
+	private Link west;
+	private Link south;
+	private Link north;
+
+	/**
+	 * A TCP connection to a neighbouring worker.
+	 */
+	private static class Link {
+		final Socket socket;
+		final DataInputStream in;
+		final DataOutputStream out;
+
+		Link(Socket socket) throws IOException {
+			socket.setTcpNoDelay(true);
+			this.socket = socket;
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		}
+	}
+
+	private TileWorker(DataInputStream config) throws IOException {
+		config.readInt();// rows of the torus, only the coordinator needs them
+		columns = config.readInt();
+		firstRow = config.readInt();
+		firstColumn = config.readInt();
+		height = config.readInt() - firstRow;
+		width = config.readInt() - firstColumn;
+		halo = config.readInt();
+		table = Rule.parse(config.readUTF()).getTable();
+		current = new boolean[height + 2 * halo][width + 2 * halo];
+		next = new boolean[height + 2 * halo][width + 2 * halo];
+	}
+
+	public static void main(String[] args) throws IOException {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		try (Socket coordinator = new Socket(loopback, Integer.parseInt(args[0]));
+				ServerSocket peers = new ServerSocket(0, 4, loopback)) {
+			coordinator.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(coordinator.getInputStream(), 1 << 16));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(coordinator.getOutputStream(), 1 << 16));
+			out.writeInt(Integer.parseInt(args[1]));
+			out.writeInt(peers.getLocalPort());
+			out.flush();
+			TileWorker worker = new TileWorker(in);
+			worker.connect(loopback, in.readInt(), in.readInt(), peers);
+			out.writeByte(DONE);
+			out.flush();
+			try {
+				worker.serve(in, out);
+			} catch (EOFException e) {
+				// the coordinator closed the connection without saying QUIT
+			} finally {
+				worker.sender.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Opens the links to the east and south neighbours, then waits for those
+	 * of the west and north ones. Connecting completes without an accept, so
+	 * no worker can block another.
+	 */
+	private void connect(InetAddress loopback, int eastPort, int southPort, ServerSocket peers) throws IOException {
+		east = new Link(new Socket(loopback, eastPort));
+		east.out.writeByte(FROM_WEST);
+		east.out.flush();
+		south = new Link(new Socket(loopback, southPort));
+		south.out.writeByte(FROM_NORTH);
+		south.out.flush();
+		for (int i = 0; i < 2; i++) {
+			Link link = new Link(peers.accept());
+			if (link.in.readByte() == FROM_WEST)
+				west = link;
+			else
+				north = link;
+		}
+	}
+
+	private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+		while (true) {
+			byte command = in.readByte();
+			switch (command) {
+			case LOAD:
+				readCells(in, current, halo, halo + height, halo, halo + width);
+				validHalo = 0;
+				stepped = false;
+				out.writeByte(DONE);
+				break;
+			case STEP:
+				boolean exchangeFirst = in.readBoolean();
+				int generations = in.readInt();
+				for (int i = 0; i < generations; i++) {
+					if (exchangeFirst || validHalo == 0) {
+						exchange();
+						exchangeFirst = false;
+					}
+					step();
+				}
+				out.writeByte(DONE);
+				break;
+			case EDIT:
+				current[halo + in.readInt() - firstRow][halo + in.readInt() - firstColumn] = in.readBoolean();
+				break;// no reply, edits are streamed
+			case CELLS:
+				writeCells(out, current, halo, halo + height, halo, halo + width);
+				break;
+			case CHANGES:
+				writeChanges(out);
+				break;
+			case POPULATION:
+				out.writeLong(population());
+				break;
+			case RULE:
+				table = Rule.parse(in.readUTF()).getTable();
+				out.writeByte(DONE);
+				break;
+			case QUIT:
+				return;
+			default:
+				throw new IOException("Unknown command " + command);
+			}
+			out.flush();
+		}
+	}
+
+	/**
+	 * Refills the whole ghost border from the neighbours.
+	 */
+	private void exchange() throws IOException {
+		int rows = height + 2 * halo;
+		int allColumns = width + 2 * halo;
+		// Columns first, interior rows only
+		Future<?> sent = send(east, halo, halo + height, width, halo + width, west, halo, halo + height, halo,
+				2 * halo);
+		readCells(west.in, current, halo, halo + height, 0, halo);
+		readCells(east.in, current, halo, halo + height, halo + width, allColumns);
+		finish(sent);
+		// Then rows, including the ghost columns just received
+		sent = send(south, height, halo + height, 0, allColumns, north, halo, 2 * halo, 0, allColumns);
+		readCells(north.in, current, 0, halo, 0, allColumns);
+		readCells(south.in, current, halo + height, rows, 0, allColumns);
+		finish(sent);
+		validHalo = halo;
+	}
+
+	/**
+	 * Writes two rectangles of the tile to two links on the sender thread,
+	 * the first one first. Every worker reads the link the second rectangle
+	 * of its neighbour goes to only after the first, so writes and reads
+	 * pair up and a full socket buffer never blocks both ends.
+	 */
+	private Future<?> send(Link first, int firstFromRow, int firstToRow, int firstFromColumn, int firstToColumn,
+			Link second, int secondFromRow, int secondToRow, int secondFromColumn, int secondToColumn) {
+		return sender.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				writeCells(first.out, current, firstFromRow, firstToRow, firstFromColumn, firstToColumn);
+				first.out.flush();
+				writeCells(second.out, current, secondFromRow, secondToRow, secondFromColumn, secondToColumn);
+				second.out.flush();
+				return null;
+			}
+		});
+	}
+
+	private static void finish(Future<?> sent) throws IOException {
+		try {
+			sent.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while sending the halo");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Steps every cell that still has a current neighbourhood: the tile and
+	 * validHalo - 1 rings of ghost cells around it.
+	 */
+	private void step() {
+		int from = halo - validHalo + 1;
+		int toRow = halo + height + validHalo - 1;
+		int toColumn = halo + width + validHalo - 1;
+		for (int row = from; row < toRow; row++) {
+			boolean[] up = current[row - 1];
+			boolean[] middle = current[row];
+			boolean[] down = current[row + 1];
+			boolean[] out = next[row];
+			int neighbourhood = (column(up, middle, down, from - 1) << 3) | column(up, middle, down, from);
+			for (int column = from; column < toColumn; column++) {
+				neighbourhood = ((neighbourhood << 3) | column(up, middle, down, column + 1)) & 511;
+				out[column] = table[neighbourhood];
+			}
+		}
+		boolean[][] swap = current;
+		current = next;
+		next = swap;
+		validHalo--;
+		stepped = true;
+	}
+
+	private static int column(boolean[] up, boolean[] middle, boolean[] down, int column) {
+		return (up[column] ? 4 : 0) | (middle[column] ? 2 : 0) | (down[column] ? 1 : 0);
+	}
+
+	/**
+	 * Sends the cells of the tile the last step flipped, as indices into the
+	 * torus, row * columns + column.
+	 */
+	private void writeChanges(DataOutputStream out) throws IOException {
+		int count = 0;
+		if (stepped) {
+			for (int row = halo; row < halo + height; row++) {
+				for (int column = halo; column < halo + width; column++) {
+					if (current[row][column] != next[row][column])
+						count++;
+				}
+			}
+		}
+		out.writeInt(count);
+		if (count == 0)
+			return;
+		for (int row = halo; row < halo + height; row++) {
+			for (int column = halo; column < halo + width; column++) {
+				if (current[row][column] != next[row][column])
+					out.writeInt((firstRow + row - halo) * columns + firstColumn + column - halo);
+			}
+		}
+	}
+
+	private long population() {
+		long population = 0;
+		for (int row = halo; row < halo + height; row++) {
+			for (int column = halo; column < halo + width; column++) {
+				if (current[row][column])
+					population++;
+			}
+		}
+		return population;
+	}
+
+	/**
+	 * Writes a rectangle of cells packed eight to a byte, row by row.
+	 */
+	static void writeCells(DataOutputStream out, boolean[][] cells, int fromRow, int toRow, int fromColumn,
+			int toColumn) throws IOException {
+		int bits = 0;
+		int count = 0;
+		for (int row = fromRow; row < toRow; row++) {
+			boolean[] cellRow = cells[row];
+			for (int column = fromColumn; column < toColumn; column++) {
+				bits = (bits << 1) | (cellRow[column] ? 1 : 0);
+				if (++count == 8) {
+					out.writeByte(bits);
+					bits = 0;
+					count = 0;
+				}
+			}
+		}
+		if (count > 0)
+			out.writeByte(bits << (8 - count));
+	}
+
+	/**
+	 * Reads a rectangle written by writeCells() into cells.
+	 */
+	static void readCells(DataInputStream in, boolean[][] cells, int fromRow, int toRow, int fromColumn,
+			int toColumn) throws IOException {
+		int bits = 0;
+		int count = 0;
+		for (int row = fromRow; row < toRow; row++) {
+			boolean[] cellRow = cells[row];
+			for (int column = fromColumn; column < toColumn; column++) {
+				if (count == 0) {
+					bits = in.readUnsignedByte();
+					count = 8;
+				}
+				cellRow[column] = (bits & 0x80) != 0;
+				bits <<= 1;
+				count--;
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer between one writer and one reader. The writer fills
+ * the back slot and publishes it, the reader takes the most recently published
+ * slot as its front. Publishing never waits for the reader: a slot that was
+ * published but not yet taken is simply replaced by the newer one, so the
+ * reader always gets the latest value and stale ones are dropped instead of
+ * queued.
+ */
+public class TripleBuffer<T> {
+	private static final int FRESH = 4;// set while the middle slot has not been taken
+
+	private final T first;
+	private final T second;
+	private final T third;
+	private final AtomicInteger middle = new AtomicInteger(1);// slot index | FRESH
+	private int back = 0;// only touched by the writer
+	private int front = 2;// only touched by the reader
+
+	public TripleBuffer(T first, T second, T third) {
+		this.first = first;
+		this.second = second;
+		this.third = third;
+	}
+
+	private T slot(int index) {
+		return index == 0 ? first : index == 1 ? second : third;
+	}
+
+	/**
+	 * The slot the writer may fill.
+	 */
+	public T getBack() {
+		return slot(back);
+	}
+
+	/**
+	 * Whether a published slot is still waiting for the reader. Only the reader
+	 * can clear this, so a false answer stays true until the next publish().
+	 */
+	public boolean hasFresh() {
+		return (middle.get() & FRESH) != 0;
+	}
+
+	/**
+	 * Hands the back slot to the reader and takes a free slot as the new back.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & 3;
+	}
+
+	/**
+	 * The latest published slot, or null when nothing was published since the
+	 * last call.
+	 */
+	public T acquire() {
+		if ((middle.get() & FRESH) == 0)
+			return null;
+		front = middle.getAndSet(front) & 3;
+		return slot(front);
+	}
+}
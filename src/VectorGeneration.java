@@ -0,0 +1,55 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * BitGeneration with its inner loop on the JDK Vector API: the full-adder
+ * kernel runs on LongVector lanes, several 64-bit words per instruction
+ * (four with AVX2, eight with AVX-512). The first word of each row and the
+ * words that do not fill a vector are left to the scalar kernel.
+ *
+ * jdk.incubator.vector is an incubator module, so the vector kernel lives in
+ * vector/src and is built and run separately:
+ *
+ * <pre>
+ * javac -d out src/*.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/src/*.java
+ * java --add-modules jdk.incubator.vector -cp out Game
+ * </pre>
+ *
+ * Without the module, or without VectorKernel on the class path, this engine
+ * is the scalar BitGeneration; isVectorized() tells which one is running.
+ */
+public class VectorGeneration extends BitGeneration {
+	private static final RowKernel KERNEL = loadKernel();
+
+	public VectorGeneration(boolean[][] cells) {
+		this(cells, null);
+	}
+
+	public VectorGeneration(boolean[][] cells, ForkJoinPool pool) {
+		super(cells, pool);
+	}
+
+	private static RowKernel loadKernel() {
+		try {
+			return (RowKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;// not built, or jdk.incubator.vector not added
+		}
+	}
+
+	public static boolean isVectorized() {
+		return KERNEL != null;
+	}
+
+	@Override
+	void stepRow(long[] up, long[] middle, long[] down, long[] out) {
+		if (KERNEL == null) {
+			super.stepRow(up, middle, down, out);
+			return;
+		}
+		int words = getWords();
+		stepWords(up, middle, down, out, 0, 1);
+		int word = KERNEL.stepInner(getRuleMasks(), up, middle, down, out, words);
+		stepWords(up, middle, down, out, word, words);
+	}
+}
@@ -0,0 +1,114 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels of BitGeneration.nextWord() on LongVector lanes, loaded by
+ * VectorGeneration when jdk.incubator.vector is available. The west and east
+ * neighbours of a vector of words come from two more loads offset by one
+ * word, shifted by one bit, so the vector loop needs no shuffles.
+ */
+public class VectorKernel implements RowKernel {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	@Override
+	public int stepInner(long[] masks, long[] up, long[] middle, long[] down, long[] out, int words) {
+		int lanes = SPECIES.length();
+		int word = 1;
+		if (masks == null) {
+			for (; word + lanes < words; word += lanes) {
+				LongVector upRow = LongVector.fromArray(SPECIES, up, word);
+				LongVector middleRow = LongVector.fromArray(SPECIES, middle, word);
+				LongVector downRow = LongVector.fromArray(SPECIES, down, word);
+				nextWord(west(up, upRow, word), upRow, east(up, upRow, word), west(middle, middleRow, word),
+						middleRow, east(middle, middleRow, word), west(down, downRow, word), downRow,
+						east(down, downRow, word)).intoArray(out, word);
+			}
+		} else {
+			for (; word + lanes < words; word += lanes) {
+				LongVector upRow = LongVector.fromArray(SPECIES, up, word);
+				LongVector middleRow = LongVector.fromArray(SPECIES, middle, word);
+				LongVector downRow = LongVector.fromArray(SPECIES, down, word);
+				nextWord(masks, west(up, upRow, word), upRow, east(up, upRow, word), west(middle, middleRow, word),
+						middleRow, east(middle, middleRow, word), west(down, downRow, word), downRow,
+						east(down, downRow, word)).intoArray(out, word);
+			}
+		}
+		return word;
+	}
+
+	private static LongVector west(long[] row, LongVector words, int word) {
+		LongVector previous = LongVector.fromArray(SPECIES, row, word - 1);
+		return words.lanewise(VectorOperators.LSHL, 1).or(previous.lanewise(VectorOperators.LSHR, 63));
+	}
+
+	private static LongVector east(long[] row, LongVector words, int word) {
+		LongVector next = LongVector.fromArray(SPECIES, row, word + 1);
+		return words.lanewise(VectorOperators.LSHR, 1).or(next.lanewise(VectorOperators.LSHL, 63));
+	}
+
+	/**
+	 * B3/S23, as BitGeneration.nextWord(long, ...).
+	 */
+	private static LongVector nextWord(LongVector upWest, LongVector up, LongVector upEast, LongVector west,
+			LongVector cell, LongVector east, LongVector downWest, LongVector down, LongVector downEast) {
+		LongVector upSum = upWest.lanewise(VectorOperators.XOR, up).lanewise(VectorOperators.XOR, upEast);
+		LongVector upCarry = upWest.and(up).or(upEast.and(upWest.lanewise(VectorOperators.XOR, up)));
+		LongVector middleSum = west.lanewise(VectorOperators.XOR, east);
+		LongVector middleCarry = west.and(east);
+		LongVector downSum = downWest.lanewise(VectorOperators.XOR, down).lanewise(VectorOperators.XOR, downEast);
+		LongVector downCarry = downWest.and(down).or(downEast.and(downWest.lanewise(VectorOperators.XOR, down)));
+		LongVector ones = upSum.lanewise(VectorOperators.XOR, middleSum).lanewise(VectorOperators.XOR, downSum);
+		LongVector onesCarry = upSum.and(middleSum).or(downSum.and(upSum.lanewise(VectorOperators.XOR, middleSum)));
+		LongVector oddCarries = upCarry.lanewise(VectorOperators.XOR, middleCarry)
+				.lanewise(VectorOperators.XOR, downCarry).lanewise(VectorOperators.XOR, onesCarry);
+		LongVector pairedCarries = upCarry.and(middleCarry).or(downCarry.and(onesCarry));
+		LongVector twoOrThree = oddCarries.lanewise(VectorOperators.AND_NOT, pairedCarries);
+		return twoOrThree.and(ones.or(cell));
+	}
+
+	/**
+	 * Any outer-totalistic rule, as BitGeneration.nextWord(long[], ...).
+	 */
+	private static LongVector nextWord(long[] masks, LongVector upWest, LongVector up, LongVector upEast,
+			LongVector west, LongVector cell, LongVector east, LongVector downWest, LongVector down,
+			LongVector downEast) {
+		LongVector upSum = upWest.lanewise(VectorOperators.XOR, up).lanewise(VectorOperators.XOR, upEast);
+		LongVector upCarry = upWest.and(up).or(upEast.and(upWest.lanewise(VectorOperators.XOR, up)));
+		LongVector middleSum = west.lanewise(VectorOperators.XOR, east);
+		LongVector middleCarry = west.and(east);
+		LongVector downSum = downWest.lanewise(VectorOperators.XOR, down).lanewise(VectorOperators.XOR, downEast);
+		LongVector downCarry = downWest.and(down).or(downEast.and(downWest.lanewise(VectorOperators.XOR, down)));
+		LongVector ones = upSum.lanewise(VectorOperators.XOR, middleSum).lanewise(VectorOperators.XOR, downSum);
+		LongVector onesCarry = upSum.and(middleSum).or(downSum.and(upSum.lanewise(VectorOperators.XOR, middleSum)));
+		LongVector carrySum = upCarry.lanewise(VectorOperators.XOR, middleCarry).lanewise(VectorOperators.XOR,
+				downCarry);
+		LongVector carryCarry = upCarry.and(middleCarry)
+				.or(downCarry.and(upCarry.lanewise(VectorOperators.XOR, middleCarry)));
+		LongVector twos = carrySum.lanewise(VectorOperators.XOR, onesCarry);
+		LongVector twosCarry = carrySum.and(onesCarry);
+		LongVector fours = carryCarry.lanewise(VectorOperators.XOR, twosCarry);
+		LongVector eights = carryCarry.and(twosCarry);
+		LongVector born = select(masks, 0, ones, twos, fours, eights);
+		LongVector survives = select(masks, 9, ones, twos, fours, eights);
+		return mux(born, survives, cell);
+	}
+
+	private static LongVector select(long[] masks, int offset, LongVector ones, LongVector twos, LongVector fours,
+			LongVector eights) {
+		LongVector m01 = mux(masks[offset], masks[offset + 1], ones);
+		LongVector m23 = mux(masks[offset + 2], masks[offset + 3], ones);
+		LongVector m45 = mux(masks[offset + 4], masks[offset + 5], ones);
+		LongVector m67 = mux(masks[offset + 6], masks[offset + 7], ones);
+		LongVector m0to7 = mux(mux(m01, m23, twos), mux(m45, m67, twos), fours);
+		return mux(m0to7, LongVector.broadcast(SPECIES, masks[offset + 8]), eights);
+	}
+
+	private static LongVector mux(long a, long b, LongVector select) {
+		return mux(LongVector.broadcast(SPECIES, a), LongVector.broadcast(SPECIES, b), select);
+	}
+
+	private static LongVector mux(LongVector a, LongVector b, LongVector select) {
+		return a.lanewise(VectorOperators.XOR, a.lanewise(VectorOperators.XOR, b).and(select));
+	}
+}